@@ -6,23 +6,63 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Color;
 import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.Gravity;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowInsets;
+import android.view.WindowInsetsController;
 import android.view.WindowManager;
 import android.widget.Button;
-import android.widget.EditText;
 import android.widget.LinearLayout;
-import android.widget.ScrollView;
 import android.widget.TextView;
+import java.io.File;
 
+// Shown over the lock screen for a completed cycle, so it is built for time to first frame:
+// the dark window background (AppTheme.Alert) is already the screen's background, the
+// hierarchy is one LinearLayout deep, and colors and button backgrounds are not re-parsed or
+// rebuilt on every launch.
 public class AlertActivity extends Activity {
+    private static final int ACCENT = 0xffeab308; // Yellow-500
+    private static final int LOSS = 0xffdc2626;
+
+    // Button backgrounds only depend on density; later launches clone these
+    private static Drawable.ConstantState winBackground;
+    private static Drawable.ConstantState lossBackground;
+    private static float backgroundDensity;
+
+    // elapsedRealtime of the tap that asked for the alert screen, stamped by AlertTapActivity
+    static final String EXTRA_TAPPED_AT = "alertTappedAt";
+
+    private long createdAt;
+
+    // Intent for showing the alert of the given timer; build it when the tap happens.
+    static Intent launchIntent(Context context, String timerId) {
+        return new Intent(context, AlertActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
+                .putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId)
+                .putExtra(EXTRA_TAPPED_AT, SystemClock.elapsedRealtime());
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        createdAt = SystemClock.elapsedRealtime();
+        TimerTrace.begin(TimerTrace.ALERT_ACTIVITY);
+        try {
+            super.onCreate(savedInstanceState);
+            createContent();
+        } finally {
+            TimerTrace.end(TimerTrace.ALERT_ACTIVITY);
+        }
+    }
+
+    private void createContent() {
+        long tappedAt = getIntent().getLongExtra(EXTRA_TAPPED_AT, 0);
+        if (tappedAt > 0) record(TimerLatency.ALERT_LAUNCH, createdAt - tappedAt);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
             setShowWhenLocked(true);
@@ -37,25 +77,13 @@ public class AlertActivity extends Activity {
                     | WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON
                     | WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD);
         }
-        
-        // Hide system bars
-        getWindow().getDecorView().setSystemUiVisibility(
-            View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-            | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-            | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-            | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-            | View.SYSTEM_UI_FLAG_FULLSCREEN
-            | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY);
-
-        ScrollView scrollView = new ScrollView(this);
-        scrollView.setFillViewport(true);
-        scrollView.setBackgroundColor(Color.parseColor("#050505"));
 
+        float density = getResources().getDisplayMetrics().density;
         LinearLayout layout = new LinearLayout(this);
         layout.setOrientation(LinearLayout.VERTICAL);
         layout.setGravity(Gravity.CENTER);
-        int padding = dpToPx(24);
-        layout.setPadding(padding, padding, padding, dpToPx(280)); // Increased from 120 to 280 to move up
+        int padding = dpToPx(density, 24);
+        layout.setPadding(padding, padding, padding, dpToPx(density, 280)); // Increased from 120 to 280 to move up
 
         TextView title = new TextView(this);
         title.setText("CYCLE COMPLETE");
@@ -63,16 +91,16 @@ public class AlertActivity extends Activity {
         title.setTextSize(32);
         title.setTypeface(null, Typeface.BOLD_ITALIC);
         title.setGravity(Gravity.CENTER);
-        title.setPadding(0, 0, 0, dpToPx(16));
+        title.setPadding(0, 0, 0, dpToPx(density, 16));
         layout.addView(title);
-        
+
         TextView sub = new TextView(this);
         sub.setText("Declare your status");
-        sub.setTextColor(Color.parseColor("#eab308")); // Yellow-500
+        sub.setTextColor(ACCENT);
         sub.setTextSize(14);
         sub.setLetterSpacing(0.2f);
         sub.setGravity(Gravity.CENTER);
-        sub.setPadding(0, 0, 0, dpToPx(40));
+        sub.setPadding(0, 0, 0, dpToPx(density, 40));
         layout.addView(sub);
 
         // Input removed per request
@@ -80,45 +108,116 @@ public class AlertActivity extends Activity {
         LinearLayout btnContainer = new LinearLayout(this);
         btnContainer.setOrientation(LinearLayout.HORIZONTAL);
         btnContainer.setGravity(Gravity.CENTER);
-        
+        prepareBackgrounds(density);
+
         Button btnWin = new Button(this);
         btnWin.setText("DONE");
-        GradientDrawable winBg = new GradientDrawable();
-        winBg.setColor(Color.parseColor("#eab308"));
-        winBg.setCornerRadius(dpToPx(30));
-        btnWin.setBackground(winBg);
+        btnWin.setBackground(winBackground.newDrawable());
         btnWin.setTextColor(Color.BLACK);
         btnWin.setTypeface(null, Typeface.BOLD);
         btnWin.setOnClickListener(v -> submit("ACTION_WIN", ""));
-        LinearLayout.LayoutParams p1 = new LinearLayout.LayoutParams(0, dpToPx(60), 1f);
-        p1.setMargins(0, 0, dpToPx(10), 0);
+        LinearLayout.LayoutParams p1 = new LinearLayout.LayoutParams(0, dpToPx(density, 60), 1f);
+        p1.setMargins(0, 0, dpToPx(density, 10), 0);
         btnContainer.addView(btnWin, p1);
 
         Button btnLoss = new Button(this);
         btnLoss.setText("MISS");
-        GradientDrawable lossBg = new GradientDrawable();
-        lossBg.setColor(Color.parseColor("#dc2626"));
-        lossBg.setCornerRadius(dpToPx(30));
-        btnLoss.setBackground(lossBg);
+        btnLoss.setBackground(lossBackground.newDrawable());
         btnLoss.setTextColor(Color.WHITE);
         btnLoss.setTypeface(null, Typeface.BOLD);
         btnLoss.setOnClickListener(v -> submit("ACTION_LOSS", ""));
-        LinearLayout.LayoutParams p2 = new LinearLayout.LayoutParams(0, dpToPx(60), 1f);
-        p2.setMargins(dpToPx(10), 0, 0, 0);
+        LinearLayout.LayoutParams p2 = new LinearLayout.LayoutParams(0, dpToPx(density, 60), 1f);
+        p2.setMargins(dpToPx(density, 10), 0, 0, 0);
         btnContainer.addView(btnLoss, p2);
 
         layout.addView(btnContainer, new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
-        
-        scrollView.addView(layout);
-        setContentView(scrollView);
+
+        setContentView(layout);
+        hideSystemBars();
+        recordFirstDraw(layout);
     }
 
+    private void hideSystemBars() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            getWindow().setDecorFitsSystemWindows(false);
+            WindowInsetsController controller = getWindow().getInsetsController();
+            if (controller != null) {
+                controller.hide(WindowInsets.Type.systemBars());
+                controller.setSystemBarsBehavior(WindowInsetsController.BEHAVIOR_SHOW_TRANSIENT_BARS_BY_SWIPE);
+            }
+        } else {
+            getWindow().getDecorView().setSystemUiVisibility(
+                View.SYSTEM_UI_FLAG_LAYOUT_STABLE
+                | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
+                | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
+                | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
+                | View.SYSTEM_UI_FLAG_FULLSCREEN
+                | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY);
+        }
+    }
+
+    private static synchronized void prepareBackgrounds(float density) {
+        if (winBackground != null && backgroundDensity == density) return;
+        winBackground = roundedBackground(ACCENT, density).getConstantState();
+        lossBackground = roundedBackground(LOSS, density).getConstantState();
+        backgroundDensity = density;
+    }
+
+    private static GradientDrawable roundedBackground(int color, float density) {
+        GradientDrawable background = new GradientDrawable();
+        background.setColor(color);
+        background.setCornerRadius(dpToPx(density, 30));
+        return background;
+    }
+
+    // Only the timestamps are taken on the main thread; mapping the metric files and writing
+    // the sample happen on the scheduler.
+    private void record(int metric, long valueMs) {
+        File dir = getFilesDir();
+        TimerScheduler.execute(() -> {
+            TimerMetrics.attach(dir);
+            TimerLatency.attach(dir);
+            TimerLatency.record(metric, valueMs);
+        });
+    }
+
+    // onCreate -> the first frame is about to be drawn
+    private void recordFirstDraw(View root) {
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                record(TimerLatency.ALERT_FIRST_DRAW, SystemClock.elapsedRealtime() - createdAt);
+                return true;
+            }
+        });
+    }
+
+    private String timerId() {
+        String timerId = getIntent().getStringExtra(TimerForegroundService.EXTRA_TIMER_ID);
+        return timerId == null ? TimerStateStore.DEFAULT_TIMER : timerId;
+    }
+
+    // Hands the result to the service, which logs it, starts the next cycle and replaces the
+    // alert with its countdown in one step, without ever starting the WebView.
     private void submit(String action, String text) {
-        // Save to Persistent Storage for Cold Starts / Resume
-        getSharedPreferences("NativeLog", MODE_PRIVATE).edit()
-            .putString("pending_input", text)
-            .putString("pending_type", "ACTION_WIN".equals(action) ? "WIN" : "LOSS")
-            .apply();
+        Intent result = new Intent(this, TimerForegroundService.class)
+                .setAction(action)
+                .putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId())
+                .putExtra(TimerForegroundService.EXTRA_INPUT_TEXT, text)
+                .putExtra(TimerForegroundService.EXTRA_TAPPED_AT, SystemClock.elapsedRealtime());
+        try {
+            // Started while this activity is in the foreground, so no foreground service start
+            // is needed even if the service was killed
+            startService(result);
+        } catch (RuntimeException e) {
+            // Never lose the result: queue it for the web layer like the old path did, off the
+            // main thread since the queue write is fsynced
+            e.printStackTrace();
+            Context context = getApplicationContext();
+            TimerScheduler.execute(() -> PendingLogQueue.record(context, action, text));
+        }
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             KeyguardManager keyguardManager = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
@@ -128,8 +227,8 @@ public class AlertActivity extends Activity {
         }
         finish();
     }
-    
-    private int dpToPx(int dp) {
-        return (int) (dp * getResources().getDisplayMetrics().density);
+
+    private static int dpToPx(float density, int dp) {
+        return (int) (dp * density);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package com.quarterlog.app;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+// Content intent of the "Cycle Complete" notification. A PendingIntent's extras are fixed when
+// the notification is built, so this stamps the tap time and hands over to AlertActivity in
+// the same process. It never draws: the theme is Theme.NoDisplay and it finishes in onCreate.
+public class AlertTapActivity extends Activity {
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        String timerId = getIntent().getStringExtra(TimerForegroundService.EXTRA_TIMER_ID);
+        startActivity(AlertActivity.launchIntent(this, timerId == null ? TimerStateStore.DEFAULT_TIMER : timerId));
+        finish();
+    }
+}
@@ -1,12 +1,9 @@
 package com.quarterlog.app;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import java.util.Calendar;
+import android.os.Build;
 
 public class BootReceiver extends BroadcastReceiver {
     @Override
@@ -15,48 +12,30 @@ public class BootReceiver extends BroadcastReceiver {
             return;
         }
 
-        SharedPreferences prefs = context.getSharedPreferences("DailySchedule", Context.MODE_PRIVATE);
-        if (!prefs.getBoolean("enabled", false)) {
-            return;
-        }
-
-        int hour = prefs.getInt("hour", 9);
-        int minute = prefs.getInt("minute", 0);
-        long duration = prefs.getLong("duration", 15 * 60 * 1000);
-        int totalCycles = prefs.getInt("totalCycles", 32);
-
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) return;
-
-        Intent dailyIntent = new Intent(context, DailyStartReceiver.class);
-        dailyIntent.putExtra("duration", duration);
-        dailyIntent.putExtra("totalCycles", totalCycles);
-        dailyIntent.putExtra("cyclesLeft", totalCycles);
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            context, 
-            1001, 
-            dailyIntent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, hour);
-        calendar.set(Calendar.MINUTE, minute);
-        calendar.set(Calendar.SECOND, 0);
-
-        if (calendar.getTimeInMillis() <= System.currentTimeMillis()) {
-            calendar.add(Calendar.DAY_OF_YEAR, 1);
-        }
+        Context appContext = context.getApplicationContext();
+        TimerScheduler.executeAsync(this, () -> {
+            TimerMetrics.attach(appContext.getFilesDir());
+            TimerMetrics.increment(TimerMetrics.BROADCASTS_RECEIVED);
+            // Alarms don't survive a reboot; arm the earliest scheduled start again
+            ScheduleAlarm.rearm(appContext, System.currentTimeMillis());
+            // A day that was running when the device went down carries on where it left off
+            if (TimerJournal.hasLiveTimer(appContext)) {
+                resume(appContext);
+            }
+        });
+    }
 
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-            if (alarmManager.canScheduleExactAlarms()) {
-                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
+    private static void resume(Context context) {
+        Intent serviceIntent = new Intent(context, TimerForegroundService.class);
+        serviceIntent.setAction(TimerForegroundService.ACTION_RESUME);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(serviceIntent);
             } else {
-                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
+                context.startService(serviceIntent);
             }
-        } else {
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 }
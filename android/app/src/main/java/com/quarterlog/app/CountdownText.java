@@ -0,0 +1,56 @@
+package com.quarterlog.app;
+
+// Remaining-time text for the ongoing notification, formatted into a reused char buffer.
+// A String is only materialized when the visible text actually changes.
+final class CountdownText {
+    static final long UNIT_MS = 60 * 1000;
+
+    private static final char[] SUFFIX = {' ', 'm', 'i', 'n'};
+
+    private final char[] buf = new char[24];
+    private final char[] scratch = new char[24];
+    private int len;
+    private String text;
+
+    // Returns true if the visible text changed.
+    boolean set(long millisLeft) {
+        // Round up so the last minute reads "1 min" rather than "0 min"
+        long minutes = Math.max(0, (millisLeft + UNIT_MS - 1) / UNIT_MS);
+        int n = format(minutes, scratch);
+        if (n == len && regionEquals(n)) return false;
+        System.arraycopy(scratch, 0, buf, 0, n);
+        len = n;
+        text = null;
+        return true;
+    }
+
+    void reset() {
+        len = 0;
+        text = null;
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) text = new String(buf, 0, len);
+        return text;
+    }
+
+    static int format(long minutes, char[] dst) {
+        int digits = 1;
+        for (long v = minutes; v >= 10; v /= 10) digits++;
+        long v = minutes;
+        for (int i = digits - 1; i >= 0; i--) {
+            dst[i] = (char) ('0' + (v % 10));
+            v /= 10;
+        }
+        System.arraycopy(SUFFIX, 0, dst, digits, SUFFIX.length);
+        return digits + SUFFIX.length;
+    }
+
+    private boolean regionEquals(int n) {
+        for (int i = 0; i < n; i++) {
+            if (buf[i] != scratch[i]) return false;
+        }
+        return true;
+    }
+}
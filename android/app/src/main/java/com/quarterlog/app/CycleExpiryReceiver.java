@@ -0,0 +1,64 @@
+package com.quarterlog.app;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+// The service start goes out straight from onReceive, while the alarm's broadcast still
+// allows it; metrics follow on the scheduler thread.
+public class CycleExpiryReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Context appContext = context.getApplicationContext();
+        boolean started = startService(appContext);
+        TimerScheduler.executeAsync(this, () -> {
+            TimerMetrics.attach(appContext.getFilesDir());
+            TimerMetrics.increment(TimerMetrics.BROADCASTS_RECEIVED);
+            if (!started) postAlerts(appContext);
+        });
+    }
+
+    private static boolean startService(Context context) {
+        // AlarmManager only keeps the CPU awake until the broadcast finishes
+        TimerForegroundService.acquireExpiryWakeLock(context);
+
+        Intent serviceIntent = new Intent(context, TimerForegroundService.class);
+        serviceIntent.setAction(TimerForegroundService.ACTION_EXPIRE);
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(serviceIntent);
+            } else {
+                context.startService(serviceIntent);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            TimerForegroundService.releaseExpiryWakeLock();
+            return false;
+        }
+    }
+
+    // Without the service nothing would tell the user a cycle is over, so post the alert of
+    // every due timer directly. Its DONE/MISS actions start the service from the notification.
+    private static void postAlerts(Context context) {
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null) return;
+        TimerNotifications.createChannels(context);
+        long now = System.currentTimeMillis();
+        int slot = 0;
+        for (String id : TimerStateStore.timerIds(context)) {
+            if (slot >= TimerForegroundService.MAX_TIMERS) break;
+            TimerJournal.Record record = TimerJournal.replay(context, id);
+            if (!record.live()) continue;
+            int timerSlot = slot++;
+            if (record.endTime > now + TimerForegroundService.EXPIRY_BATCH_MS) continue;
+            int notificationId = TimerForegroundService.notificationId(timerSlot);
+            TimerNotifications notifications = new TimerNotifications(context, id, timerSlot, notificationId);
+            int cycle = Math.max(1, record.totalCycles - record.cyclesLeft + 1);
+            manager.notify(notificationId, notifications.alert(cycle, record.totalCycles));
+        }
+    }
+}
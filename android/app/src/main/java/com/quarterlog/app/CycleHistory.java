@@ -0,0 +1,248 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Every cycle result ever recorded, kept natively so it can be range-queried by day without
+// going through the web layer. Two append-only files:
+//
+//   history.idx  one 40-byte row per result:
+//                0 long wallTime   8 long dataOffset   16 int day   20 int cycle   24 int textLength
+//                28 int timerHash   32 byte outcome   33 byte timerLength   34 pad 6
+//   history.dat  [utf8 timer id][utf8 text] of each row at its dataOffset
+//
+// The data is written before its row, so a row never points past the end of history.dat; a
+// torn row at the end is dropped on open. Rows are in append order, so the row number is the
+// monotonic sequence pages resume from. day is the local day at append time, which only goes
+// down when the clock or time zone moves back: up to the first row where that happened, day
+// ranges are found by binary search, and rows from there on are checked one by one. Appends
+// are not fsynced: the PendingLogQueue already holds every result durably until the web layer
+// has taken it.
+final class CycleHistory {
+    static final int ROW_BYTES = 40;
+    private static final int SCAN_ROWS = 256;
+    private static final int MAX_TIMER_BYTES = 64;
+
+    private static CycleHistory instance;
+
+    // One history row. text is only filled in by read().
+    static final class Row {
+        long wallTime;
+        int day;
+        int cycle;
+        byte outcome;
+        String timer;
+        String text;
+    }
+
+    // Rows matched by find(), and where the next page starts.
+    static final class Page {
+        final int[] rows;
+        final int count;
+        final int next;
+
+        Page(int[] rows, int count, int next) {
+            this.rows = rows;
+            this.count = count;
+            this.next = next;
+        }
+    }
+
+    private final FileChannel index;
+    private final FileChannel data;
+    private final ByteBuffer row = ByteBuffer.allocate(ROW_BYTES);
+    private final ByteBuffer scan = ByteBuffer.allocate(SCAN_ROWS * ROW_BYTES);
+    private int size;
+    private long dataEnd;
+    // Rows before this one are in day order
+    private int sortedEnd;
+    private int lastDay = Integer.MIN_VALUE;
+
+    static synchronized CycleHistory get(Context context) throws IOException {
+        if (instance == null) {
+            instance = new CycleHistory(context.getFilesDir());
+        }
+        return instance;
+    }
+
+    // Convenience for PendingLogQueue.record; a failed history write must not lose the result.
+    static void record(Context context, String timer, long wallTime, int cycle, byte outcome, String text) {
+        try {
+            get(context).append(timer, wallTime, cycle, outcome, text);
+            context.getContentResolver().notifyChange(CycleHistoryProvider.uri(context), null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    CycleHistory(File dir) throws IOException {
+        index = new RandomAccessFile(new File(dir, "history.idx"), "rw").getChannel();
+        data = new RandomAccessFile(new File(dir, "history.dat"), "rw").getChannel();
+        size = (int) (index.size() / ROW_BYTES);
+        dataEnd = data.size();
+        long end = 0;
+        while (size > 0) {
+            readRow(size - 1);
+            end = rowDataEnd();
+            if (end <= dataEnd) break;
+            size--;
+            end = 0;
+        }
+        if (index.size() != (long) size * ROW_BYTES) {
+            index.truncate((long) size * ROW_BYTES);
+        }
+        // Data written for a row that never made it is overwritten by the next append
+        dataEnd = end;
+        findSortedEnd();
+    }
+
+    synchronized void append(String timer, long wallTime, int cycle, byte outcome, String text) throws IOException {
+        if (timer == null) timer = TimerStateStore.DEFAULT_TIMER;
+        byte[] timerUtf8 = timer.getBytes(StandardCharsets.UTF_8);
+        int timerLength = Math.min(timerUtf8.length, MAX_TIMER_BYTES);
+        byte[] textUtf8 = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer payload = ByteBuffer.allocate(timerLength + textUtf8.length);
+        payload.put(timerUtf8, 0, timerLength).put(textUtf8).flip();
+        long offset = dataEnd;
+        while (payload.hasRemaining()) {
+            offset += data.write(payload, offset);
+        }
+
+        int day = TimerLatency.localDay(wallTime);
+        row.clear();
+        row.putLong(wallTime)
+                .putLong(dataEnd)
+                .putInt(day)
+                .putInt(cycle)
+                .putInt(textUtf8.length)
+                .putInt(timer.hashCode())
+                .put(outcome)
+                .put((byte) timerLength);
+        row.clear();
+        long position = (long) size * ROW_BYTES;
+        while (row.hasRemaining()) {
+            position += index.write(row, position);
+        }
+        dataEnd = offset;
+        if (sortedEnd == size && day >= lastDay) sortedEnd++;
+        lastDay = day;
+        size++;
+        TimerMetrics.increment(TimerMetrics.STORAGE_WRITES);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // First row that can be on or after the given local day: the first such row of the sorted
+    // rows, or the first unsorted row if there is none.
+    synchronized int firstOnOrAfter(int day) throws IOException {
+        int low = 0;
+        int high = sortedEnd;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            readRow(mid);
+            if (row.getInt(16) < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Scans forward from row `from` for up to `limit` rows within fromDay..toDay, keeping those
+    // with the given outcome (0 for any) and timer (null for any). Past toDay the rest of the
+    // sorted rows are skipped. Only history.idx is read, in SCAN_ROWS chunks, except to confirm
+    // a timer match.
+    synchronized Page find(int from, int fromDay, int toDay, byte outcome, String timer, int limit) throws IOException {
+        int[] rows = new int[Math.min(limit, 64)];
+        int count = 0;
+        int next = from;
+        int timerHash = timer == null ? 0 : timer.hashCode();
+        byte[] timerUtf8 = timer == null ? null : timer.getBytes(StandardCharsets.UTF_8);
+        scanning:
+        while (next < size && count < limit) {
+            int chunk = Math.min(SCAN_ROWS, size - next);
+            scan.clear().limit(chunk * ROW_BYTES);
+            readFully(index, scan, (long) next * ROW_BYTES);
+            for (int i = 0; i < chunk && count < limit; i++, next++) {
+                int base = i * ROW_BYTES;
+                int day = scan.getInt(base + 16);
+                if (day > toDay && next < sortedEnd) {
+                    next = sortedEnd;
+                    continue scanning;
+                }
+                if (day < fromDay || day > toDay) continue;
+                if (outcome != 0 && scan.get(base + 32) != outcome) continue;
+                if (timer != null && (scan.getInt(base + 28) != timerHash
+                        || !timerMatches(scan.getLong(base + 8), scan.get(base + 33) & 0xff, timerUtf8))) continue;
+                if (count == rows.length) rows = Arrays.copyOf(rows, Math.min(limit, rows.length * 2));
+                rows[count++] = next;
+            }
+        }
+        return new Page(rows, count, next);
+    }
+
+    // Reads one row, text included, into the given holder.
+    synchronized void read(int position, Row into) throws IOException {
+        readRow(position);
+        into.wallTime = row.getLong(0);
+        into.day = row.getInt(16);
+        into.cycle = row.getInt(20);
+        into.outcome = row.get(32);
+        int timerLength = row.get(33) & 0xff;
+        int textLength = row.getInt(24);
+        ByteBuffer payload = ByteBuffer.allocate(timerLength + textLength);
+        readFully(data, payload, row.getLong(8));
+        into.timer = new String(payload.array(), 0, timerLength, StandardCharsets.UTF_8);
+        into.text = new String(payload.array(), timerLength, textLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean timerMatches(long offset, int length, byte[] timerUtf8) throws IOException {
+        if (length != timerUtf8.length) return false;
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(data, bytes, offset);
+        return Arrays.equals(bytes.array(), timerUtf8);
+    }
+
+    // One pass over history.idx on open.
+    private void findSortedEnd() throws IOException {
+        sortedEnd = 0;
+        int next = 0;
+        while (next < size) {
+            int chunk = Math.min(SCAN_ROWS, size - next);
+            scan.clear().limit(chunk * ROW_BYTES);
+            readFully(index, scan, (long) next * ROW_BYTES);
+            for (int i = 0; i < chunk; i++, next++) {
+                int day = scan.getInt(i * ROW_BYTES + 16);
+                if (sortedEnd == next && day >= lastDay) sortedEnd++;
+                lastDay = day;
+            }
+        }
+    }
+
+    private void readRow(int position) throws IOException {
+        row.clear();
+        readFully(index, row, (long) position * ROW_BYTES);
+    }
+
+    private long rowDataEnd() {
+        return row.getLong(8) + (row.get(33) & 0xff) + row.getInt(24);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) throw new IOException("Unexpected end of cycle history");
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.quarterlog.app;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import java.io.IOException;
+
+// Read-only access to CycleHistory:
+//
+//   content://<package>.history/cycles?fromDay=&toDay=&outcome=WIN|LOSS&timer=&after=&limit=
+//
+// Days are local days since the epoch (TimerLatency.localDay), both ends inclusive. Rows come
+// oldest first; `after` resumes from the EXTRA_NEXT of the previous page. Only the matched row
+// numbers are collected up front: row contents are read as the cursor moves, so across
+// processes the Binder cursor transport pulls them one CursorWindow at a time.
+public class CycleHistoryProvider extends ContentProvider {
+    static final String PATH = "cycles";
+    // Cursor extras: row to pass as `after` for the next page, and whether there is one
+    static final String EXTRA_NEXT = "next";
+    static final String EXTRA_HAS_MORE = "hasMore";
+
+    static final int COLUMN_ID = 0;
+    static final int COLUMN_TIMESTAMP = 1;
+    static final int COLUMN_DAY = 2;
+    static final int COLUMN_CYCLE = 3;
+    static final int COLUMN_TIMER = 4;
+    static final int COLUMN_TYPE = 5;
+    static final int COLUMN_INPUT = 6;
+    private static final String[] COLUMNS = {"_id", "timestamp", "day", "cycle", "timer", "type", "input"};
+
+    static Uri uri(Context context) {
+        return Uri.parse("content://" + context.getPackageName() + ".history/" + PATH);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        if (!PATH.equals(uri.getLastPathSegment())) return null;
+        int fromDay = intParameter(uri, "fromDay", Integer.MIN_VALUE);
+        int toDay = intParameter(uri, "toDay", Integer.MAX_VALUE);
+        int after = intParameter(uri, "after", 0);
+        int limit = intParameter(uri, "limit", Integer.MAX_VALUE);
+        String type = uri.getQueryParameter("outcome");
+        byte outcome = type == null ? 0
+                : "WIN".equals(type) ? PendingLogQueue.OUTCOME_WIN : PendingLogQueue.OUTCOME_LOSS;
+        try {
+            CycleHistory history = CycleHistory.get(getContext());
+            String timer = uri.getQueryParameter("timer");
+            int start = Math.max(history.firstOnOrAfter(fromDay), after);
+            CycleHistory.Page page = history.find(start, fromDay, toDay, outcome, timer, Math.max(0, limit));
+            // A short page scanned to the end; a full one has more only if another row matches
+            boolean hasMore = page.count == limit
+                    && history.find(page.next, fromDay, toDay, outcome, timer, 1).count > 0;
+
+            Bundle extras = new Bundle();
+            extras.putInt(EXTRA_NEXT, page.next);
+            extras.putBoolean(EXTRA_HAS_MORE, hasMore);
+            HistoryCursor cursor = new HistoryCursor(history, page, extras);
+            cursor.setNotificationUri(getContext().getContentResolver(), uri(getContext()));
+            return cursor;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static int intParameter(Uri uri, String name, int fallback) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    // The rows of one page, each read from CycleHistory when the cursor moves onto it.
+    private static final class HistoryCursor extends AbstractCursor {
+        private final CycleHistory history;
+        private final CycleHistory.Page page;
+        private final Bundle extras;
+        private final CycleHistory.Row row = new CycleHistory.Row();
+
+        HistoryCursor(CycleHistory history, CycleHistory.Page page, Bundle extras) {
+            this.history = history;
+            this.page = page;
+            this.extras = extras;
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            try {
+                history.read(page.rows[newPosition], row);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return page.count;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS;
+        }
+
+        @Override
+        public Bundle getExtras() {
+            return extras;
+        }
+
+        @Override
+        public String getString(int column) {
+            switch (column) {
+                case COLUMN_TIMER:
+                    return row.timer;
+                case COLUMN_TYPE:
+                    return PendingLogQueue.outcomeName(row.outcome);
+                case COLUMN_INPUT:
+                    return row.text;
+                default:
+                    return String.valueOf(getLong(column));
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            switch (column) {
+                case COLUMN_ID:
+                    return page.rows[getPosition()];
+                case COLUMN_TIMESTAMP:
+                    return row.wallTime;
+                case COLUMN_DAY:
+                    return row.day;
+                case COLUMN_CYCLE:
+                    return row.cycle;
+                default:
+                    throw new IllegalArgumentException("Not a number column: " + column);
+            }
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            return column == COLUMN_TIMER || column == COLUMN_TYPE || column == COLUMN_INPUT
+                    ? FIELD_TYPE_STRING : FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return false;
+        }
+    }
+}
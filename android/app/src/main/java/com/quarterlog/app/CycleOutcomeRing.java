@@ -0,0 +1,195 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+// The most recent cycle results of one timer in fixed-capacity parallel primitive arrays, with
+// the current win streak, today's win/loss counts and the hit rate over the last WINDOW
+// results kept up to date on every add. Queries are field reads: no scan, no allocation.
+//
+// Every add is also written through to a memory-mapped file (like TimerMetrics), which is
+// replayed once on first use so the figures survive process death:
+//
+//   0 int magic   4 int unused   8 long total   16 [long wallTime][int cycle][byte outcome][pad 3] x CAPACITY
+final class CycleOutcomeRing {
+    static final int CAPACITY = 256;
+    static final int WINDOW = 32;
+
+    private static final int MAGIC = 0x514c4f52; // "QLOR"
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+    private static final int FILE_BYTES = HEADER_BYTES + CAPACITY * RECORD_BYTES;
+
+    private static final Map<String, CycleOutcomeRing> instances = new HashMap<>();
+
+    private final long[] times = new long[CAPACITY];
+    private final byte[] outcomes = new byte[CAPACITY];
+    private final int[] cycles = new int[CAPACITY];
+    // Results ever added; the newest sits at (total - 1) % CAPACITY
+    private long total;
+
+    private int streak;
+    private int windowWins;
+    // Local day the daily counts belong to, as a [dayStart, dayEnd) wall-clock range
+    private long dayStart;
+    private long dayEnd;
+    private int dayWins;
+    private int dayLosses;
+
+    private MappedByteBuffer mapped;
+
+    static synchronized CycleOutcomeRing get(Context context, String timerId) {
+        CycleOutcomeRing ring = instances.get(timerId);
+        if (ring == null) {
+            ring = new CycleOutcomeRing();
+            ring.attach(fileFor(context.getFilesDir(), timerId));
+            instances.put(timerId, ring);
+        }
+        return ring;
+    }
+
+    // Named timers drop their history along with their state when their day is over.
+    static synchronized void discard(Context context, String timerId) {
+        if (TimerStateStore.DEFAULT_TIMER.equals(timerId)) return;
+        instances.remove(timerId);
+        fileFor(context.getFilesDir(), timerId).delete();
+    }
+
+    private static File fileFor(File dir, String timerId) {
+        return new File(dir, TimerStateStore.DEFAULT_TIMER.equals(timerId) ? "outcomes.bin" : "outcomes_" + timerId + ".bin");
+    }
+
+    // Binds the ring to its file and replays what the file holds.
+    synchronized void attach(File file) {
+        if (mapped != null) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() < FILE_BYTES;
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            if (fresh || buffer.getInt(0) != MAGIC) {
+                buffer.putInt(0, MAGIC);
+                buffer.putLong(8, 0);
+            } else {
+                long stored = buffer.getLong(8);
+                // Replay in the slots they were written to; a streak older than CAPACITY is cut short
+                total = Math.max(0, stored - CAPACITY);
+                while (total < stored) {
+                    int offset = HEADER_BYTES + (int) (total % CAPACITY) * RECORD_BYTES;
+                    append(buffer.getLong(offset), buffer.getInt(offset + 8), buffer.get(offset + 12));
+                }
+            }
+            mapped = buffer;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    synchronized void add(long wallTime, int cycle, byte outcome) {
+        int index = append(wallTime, cycle, outcome);
+        MappedByteBuffer buffer = mapped;
+        if (buffer != null) {
+            int offset = HEADER_BYTES + index * RECORD_BYTES;
+            buffer.putLong(offset, wallTime);
+            buffer.putInt(offset + 8, cycle);
+            buffer.put(offset + 12, outcome);
+            buffer.putLong(8, total);
+        }
+    }
+
+    private int append(long wallTime, int cycle, byte outcome) {
+        boolean win = outcome == PendingLogQueue.OUTCOME_WIN;
+        if (total >= WINDOW && outcomes[(int) ((total - WINDOW) % CAPACITY)] == PendingLogQueue.OUTCOME_WIN) {
+            windowWins--;
+        }
+        int index = (int) (total % CAPACITY);
+        times[index] = wallTime;
+        cycles[index] = cycle;
+        outcomes[index] = outcome;
+        total++;
+
+        if (win) {
+            windowWins++;
+            streak++;
+        } else {
+            streak = 0;
+        }
+        if (wallTime < dayStart || wallTime >= dayEnd) {
+            startDay(wallTime);
+        }
+        if (win) {
+            dayWins++;
+        } else {
+            dayLosses++;
+        }
+        return index;
+    }
+
+    private void startDay(long wallTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(wallTime);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        dayEnd = calendar.getTimeInMillis();
+        dayWins = 0;
+        dayLosses = 0;
+    }
+
+    // Results currently held, at most CAPACITY.
+    synchronized int size() {
+        return (int) Math.min(total, CAPACITY);
+    }
+
+    synchronized long total() {
+        return total;
+    }
+
+    // Consecutive wins up to and including the latest result.
+    synchronized int streak() {
+        return streak;
+    }
+
+    synchronized int todayWins(long now) {
+        return now >= dayStart && now < dayEnd ? dayWins : 0;
+    }
+
+    synchronized int todayLosses(long now) {
+        return now >= dayStart && now < dayEnd ? dayLosses : 0;
+    }
+
+    // Results the hit rate is taken over: the last WINDOW, or fewer early on.
+    synchronized int windowSize() {
+        return (int) Math.min(total, WINDOW);
+    }
+
+    synchronized double hitRate() {
+        int window = windowSize();
+        return window == 0 ? 0 : (double) windowWins / window;
+    }
+
+    // The age-th most recent result (0 = latest); age must be below size().
+    synchronized long time(int age) {
+        return times[indexOf(age)];
+    }
+
+    synchronized int cycle(int age) {
+        return cycles[indexOf(age)];
+    }
+
+    synchronized byte outcome(int age) {
+        return outcomes[indexOf(age)];
+    }
+
+    private int indexOf(int age) {
+        return (int) ((total - 1 - age) % CAPACITY);
+    }
+}
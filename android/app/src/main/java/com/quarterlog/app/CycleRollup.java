@@ -0,0 +1,181 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+// Win/loss totals of every timer per local day, with a 24-slot histogram of the hour each
+// result came in, kept up to date on every result so dashboard stats over months or years
+// cost one record per day instead of a pass over every result. One fixed-width record per
+// day from the first day with a result, in a memory-mapped file (like CycleOutcomeRing):
+//
+//   0  int magic   4 int version   8 int firstDay   12 int days   16 long results
+//   24 [int wins][int losses][[short wins][short losses] x 24 hours] per day, firstDay first
+//
+// Days without results are all zeros. The file grows by doubling as days are added. A new
+// file is filled from CycleHistory once, so results from before the rollup existed count too.
+final class CycleRollup {
+    static final int HOURS = 24;
+
+    private static final int MAGIC = 0x514c5255; // "QLRU"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int DAY_BYTES = 8 + HOURS * 4;
+    private static final int INITIAL_DAYS = 64;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private static CycleRollup instance;
+
+    // Sums over a range of days; see sum().
+    static final class Totals {
+        int wins;
+        int losses;
+        final int[] hourWins = new int[HOURS];
+        final int[] hourLosses = new int[HOURS];
+    }
+
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int capacity;
+    private int firstDay;
+    private int days;
+
+    static synchronized CycleRollup get(Context context) throws IOException {
+        if (instance == null) {
+            instance = new CycleRollup(new File(context.getFilesDir(), "rollup.bin"));
+            // Empty while history is not: new, or reset after a version change
+            if (instance.days == 0) instance.backfill(CycleHistory.get(context));
+        }
+        return instance;
+    }
+
+    // Convenience for PendingLogQueue.record; a failed rollup must not lose the result.
+    static void record(Context context, long wallTime, byte outcome) {
+        try {
+            get(context).add(wallTime, outcome);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    CycleRollup(File file) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        long length = channel.size();
+        if (length >= HEADER_BYTES) {
+            map((int) ((length - HEADER_BYTES) / DAY_BYTES));
+            if (mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION) {
+                firstDay = mapped.getInt(8);
+                days = Math.min(mapped.getInt(12), capacity);
+                return;
+            }
+        }
+        map(INITIAL_DAYS);
+        for (int i = 0; i < HEADER_BYTES + capacity * DAY_BYTES; i++) mapped.put(i, (byte) 0);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+    }
+
+    synchronized void add(long wallTime, byte outcome) throws IOException {
+        int day = TimerLatency.localDay(wallTime);
+        if (days == 0) {
+            firstDay = day;
+            mapped.putInt(8, firstDay);
+        } else if (day < firstDay) {
+            // Clock set back past the first day: make room at the front
+            prepend(firstDay - day);
+        }
+        int index = day - firstDay;
+        if (index >= capacity) map(Math.max(capacity * 2, index + 1));
+        if (index >= days) {
+            days = index + 1;
+            mapped.putInt(12, days);
+        }
+
+        long offset = TimeZone.getDefault().getOffset(wallTime);
+        int hour = (int) (Math.floorMod(wallTime + offset, 24 * HOUR_MS) / HOUR_MS);
+        int base = HEADER_BYTES + index * DAY_BYTES;
+        boolean win = outcome == PendingLogQueue.OUTCOME_WIN;
+        int total = base + (win ? 0 : 4);
+        int slot = base + 8 + hour * 4 + (win ? 0 : 2);
+        mapped.putInt(total, mapped.getInt(total) + 1);
+        mapped.putShort(slot, (short) (mapped.getShort(slot) + 1));
+        mapped.putLong(16, mapped.getLong(16) + 1);
+    }
+
+    synchronized long results() {
+        return mapped.getLong(16);
+    }
+
+    synchronized int firstDay() {
+        return firstDay;
+    }
+
+    // Last local day with a record, or firstDay() - 1 if there are none.
+    synchronized int lastDay() {
+        return firstDay + days - 1;
+    }
+
+    synchronized int wins(int day) {
+        long index = (long) day - firstDay;
+        return index >= 0 && index < days ? mapped.getInt(HEADER_BYTES + (int) index * DAY_BYTES) : 0;
+    }
+
+    synchronized int losses(int day) {
+        long index = (long) day - firstDay;
+        return index >= 0 && index < days ? mapped.getInt(HEADER_BYTES + (int) index * DAY_BYTES + 4) : 0;
+    }
+
+    // Adds up fromDay..toDay, both inclusive, into the given totals. Reads one record per
+    // stored day in the range.
+    synchronized void sum(int fromDay, int toDay, Totals into) {
+        int from = Math.max(fromDay, firstDay) - firstDay;
+        int to = Math.min(toDay, firstDay + days - 1) - firstDay;
+        for (int index = from; index <= to; index++) {
+            int base = HEADER_BYTES + index * DAY_BYTES;
+            into.wins += mapped.getInt(base);
+            into.losses += mapped.getInt(base + 4);
+            for (int hour = 0; hour < HOURS; hour++) {
+                into.hourWins[hour] += mapped.getShort(base + 8 + hour * 4) & 0xffff;
+                into.hourLosses[hour] += mapped.getShort(base + 10 + hour * 4) & 0xffff;
+            }
+        }
+    }
+
+    private void backfill(CycleHistory history) throws IOException {
+        CycleHistory.Row row = new CycleHistory.Row();
+        for (int position = 0; position < history.size(); position++) {
+            history.read(position, row);
+            add(row.wallTime, row.outcome);
+        }
+    }
+
+    private void prepend(int count) throws IOException {
+        if (days + count > capacity) map(Math.max(capacity * 2, days + count));
+        int bytes = days * DAY_BYTES;
+        ByteBuffer source = mapped.duplicate();
+        source.position(HEADER_BYTES).limit(HEADER_BYTES + bytes);
+        ByteBuffer moved = ByteBuffer.allocate(bytes).put(source);
+        moved.flip();
+        ByteBuffer target = mapped.duplicate();
+        target.position(HEADER_BYTES + count * DAY_BYTES);
+        target.put(moved);
+        for (int i = HEADER_BYTES; i < HEADER_BYTES + count * DAY_BYTES; i++) mapped.put(i, (byte) 0);
+        firstDay -= count;
+        days += count;
+        mapped.putInt(8, firstDay);
+        mapped.putInt(12, days);
+    }
+
+    // Mapping a region past the end of the file extends it; the new days are zeroed.
+    private void map(int dayCapacity) throws IOException {
+        int end = mapped == null ? HEADER_BYTES + dayCapacity * DAY_BYTES : HEADER_BYTES + capacity * DAY_BYTES;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) dayCapacity * DAY_BYTES);
+        capacity = dayCapacity;
+        for (int i = end; i < HEADER_BYTES + capacity * DAY_BYTES; i++) mapped.put(i, (byte) 0);
+    }
+}
@@ -4,12 +4,25 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.SystemClock;
 
+// Fires in a process that is usually cold. The service start goes out straight from
+// onReceive: it only needs the alarm's own extras, and Android's foreground-service deadline
+// starts counting at startForegroundService. Metrics and re-arming the next schedule event
+// follow on the scheduler thread while the service is being created.
 public class DailyStartReceiver extends BroadcastReceiver {
+    static final String EXTRA_RECEIVED_AT = "receivedAt";
+
     @Override
     public void onReceive(Context context, Intent intent) {
+        long receivedAt = SystemClock.elapsedRealtime();
         if (intent == null) return;
+        Context appContext = context.getApplicationContext();
+        startService(appContext, intent, receivedAt);
+        TimerScheduler.executeAsync(this, () -> rearm(appContext, intent));
+    }
 
+    private static void startService(Context context, Intent intent, long receivedAt) {
         long duration = intent.getLongExtra("duration", 15 * 60 * 1000);
         int totalCycles = intent.getIntExtra("totalCycles", 32); 
         int cyclesLeft = intent.getIntExtra("cyclesLeft", 32);
@@ -18,6 +31,7 @@ public class DailyStartReceiver extends BroadcastReceiver {
         serviceIntent.putExtra("duration", duration);
         serviceIntent.putExtra("totalCycles", totalCycles);
         serviceIntent.putExtra("cyclesLeft", cyclesLeft);
+        serviceIntent.putExtra(EXTRA_RECEIVED_AT, receivedAt);
 
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -29,4 +43,14 @@ public class DailyStartReceiver extends BroadcastReceiver {
             e.printStackTrace();
         }
     }
+
+    private static void rearm(Context context, Intent intent) {
+        TimerMetrics.attach(context.getFilesDir());
+        TimerMetrics.increment(TimerMetrics.BROADCASTS_RECEIVED);
+
+        // Only one schedule alarm is ever armed, so arm the next event now this one has fired.
+        // Never re-arm from before this event's own time in case the alarm arrived early.
+        long triggerAt = intent.getLongExtra(ScheduleAlarm.EXTRA_TRIGGER_AT, 0);
+        ScheduleAlarm.rearm(context, Math.max(System.currentTimeMillis(), triggerAt));
+    }
 }
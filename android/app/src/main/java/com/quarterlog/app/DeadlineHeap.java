@@ -0,0 +1,95 @@
+package com.quarterlog.app;
+
+import java.util.Arrays;
+
+// Indexed binary min-heap of timer slots ordered by deadline. Setting, moving or removing a
+// slot's deadline is O(log n) and the earliest one is always at the root, so the service can
+// keep a single expiry alarm aimed at whichever timer is due next.
+final class DeadlineHeap {
+    private final int[] heap;
+    private final long[] deadlines;
+    // Index of each slot in heap, or -1 if the slot has no deadline
+    private final int[] positions;
+    private int size;
+
+    DeadlineHeap(int slots) {
+        heap = new int[slots];
+        deadlines = new long[slots];
+        positions = new int[slots];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int slot) {
+        return positions[slot] >= 0;
+    }
+
+    // Slot with the earliest deadline; the heap must not be empty.
+    int peek() {
+        return heap[0];
+    }
+
+    long peekDeadline() {
+        return deadlines[heap[0]];
+    }
+
+    long deadline(int slot) {
+        return deadlines[slot];
+    }
+
+    // Inserts the slot, or moves it if it already has a deadline.
+    void set(int slot, long deadline) {
+        int position = positions[slot];
+        deadlines[slot] = deadline;
+        if (position < 0) {
+            position = size++;
+            heap[position] = slot;
+            positions[slot] = position;
+        }
+        siftDown(siftUp(position));
+    }
+
+    void remove(int slot) {
+        int position = positions[slot];
+        if (position < 0) return;
+        positions[slot] = -1;
+        int last = heap[--size];
+        if (position == size) return;
+        heap[position] = last;
+        positions[last] = position;
+        siftDown(siftUp(position));
+    }
+
+    private int siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (deadlines[heap[parent]] <= deadlines[slot]) break;
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(slot, position);
+        return position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) break;
+            if (child + 1 < size && deadlines[heap[child + 1]] < deadlines[heap[child]]) child++;
+            if (deadlines[slot] <= deadlines[heap[child]]) break;
+            move(heap[child], position);
+            position = child;
+        }
+        move(slot, position);
+    }
+
+    private void move(int slot, int position) {
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+}
@@ -0,0 +1,95 @@
+package com.quarterlog.app;
+
+import java.nio.ByteBuffer;
+
+// Fixed-size, log-bucketed histogram of millisecond latencies laid over a ByteBuffer region,
+// so the same code works on a heap buffer or a memory-mapped file.
+//
+// Values below 16 ms get exact buckets; above that each power of two is split into 8
+// sub-buckets, which bounds the error of any reported percentile to 12.5%. Region layout:
+//
+//   0 int day   4 int count   8 long max   16 long sum   24 int[BUCKETS] counts
+final class LatencyHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUBS = 1 << SUB_BITS;
+    // Up to 2^40 ms (~35 years); anything larger is clamped into the last bucket
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = LINEAR + (MAX_EXPONENT - 4 + 1) * SUBS;
+    static final int BYTES = 24 + BUCKETS * 4;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    LatencyHistogram(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    static int bucketFor(long value) {
+        if (value < LINEAR) return (int) Math.max(0, value);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUBS - 1);
+        return LINEAR + (exponent - 4) * SUBS + sub;
+    }
+
+    // Largest value that falls into the bucket.
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int exponent = (bucket - LINEAR) / SUBS + 4;
+        int sub = (bucket - LINEAR) % SUBS;
+        long base = 1L << exponent;
+        long width = base >>> SUB_BITS;
+        return base + (sub + 1) * width - 1;
+    }
+
+    int day() {
+        return buffer.getInt(offset);
+    }
+
+    long count() {
+        return buffer.getInt(offset + 4) & 0xffffffffL;
+    }
+
+    long max() {
+        return buffer.getLong(offset + 8);
+    }
+
+    long sum() {
+        return buffer.getLong(offset + 16);
+    }
+
+    // Clears the region and tags it with a new day.
+    void reset(int day) {
+        buffer.putInt(offset, day);
+        buffer.putInt(offset + 4, 0);
+        buffer.putLong(offset + 8, 0);
+        buffer.putLong(offset + 16, 0);
+        for (int i = 0; i < BUCKETS; i++) {
+            buffer.putInt(offset + 24 + i * 4, 0);
+        }
+    }
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        int slot = offset + 24 + bucketFor(value) * 4;
+        buffer.putInt(slot, buffer.getInt(slot) + 1);
+        buffer.putInt(offset + 4, buffer.getInt(offset + 4) + 1);
+        buffer.putLong(offset + 16, buffer.getLong(offset + 16) + value);
+        if (value > max()) buffer.putLong(offset + 8, value);
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100), capped at the exact max.
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buffer.getInt(offset + 24 + i * 4) & 0xffffffffL;
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+}
@@ -3,7 +3,6 @@ package com.quarterlog.app;
 import android.content.Intent;
 import android.os.Bundle;
 import com.getcapacitor.BridgeActivity;
-import com.getcapacitor.JSObject;
 
 public class MainActivity extends BridgeActivity {
     @Override
@@ -27,8 +26,8 @@ public class MainActivity extends BridgeActivity {
             String input = "";
             
             // Check direct extra from AlertActivity
-            if (intent.hasExtra("NATIVE_INPUT_TEXT")) {
-                input = intent.getStringExtra("NATIVE_INPUT_TEXT");
+            if (intent.hasExtra(TimerForegroundService.EXTRA_INPUT_TEXT)) {
+                input = intent.getStringExtra(TimerForegroundService.EXTRA_INPUT_TEXT);
             } else {
                 // Check notification inline reply
                 Bundle remoteInput = androidx.core.app.RemoteInput.getResultsFromIntent(intent);
@@ -38,17 +37,13 @@ public class MainActivity extends BridgeActivity {
                 }
             }
             
-            // Save to Persistent Storage for Cold Starts
-            getSharedPreferences("NativeLog", MODE_PRIVATE).edit()
-                .putString("pending_input", input)
-                .putString("pending_type", "ACTION_WIN".equals(action) ? "WIN" : "LOSS")
-                .apply();
-            
-            // Trigger event for Hot Resume
-            if (getBridge() != null) {
-                 String json = "{\"type\":\"" + ("ACTION_WIN".equals(action) ? "WIN" : "LOSS") + "\", \"input\":\"" + input.replace("\"", "\\\"") + "\"}";
-                 getBridge().triggerWindowJSEvent("nativeLogInput", json);
-            }
+            // Save to Persistent Storage for Cold Starts, in whichever process owns the log.
+            // Recording publishes a logResult event, which TimerPlugin hands to the web layer.
+            Bundle extras = new Bundle();
+            extras.putString("action", action);
+            extras.putString("text", input);
+            android.content.Context context = getApplicationContext();
+            TimerScheduler.execute(() -> TimerProvider.call(context, TimerProvider.RECORD, null, extras));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only queue of cycle results waiting to be picked up by the web layer.
+//
+// Records live in a single segment file as [int length][int crc32][payload]. A separate
+// 16-byte cursor file holds the logical offset of the segment start (base) and how far
+// readers have acknowledged. Cursors handed out to readers are logical offsets, so they
+// keep increasing when a fully acknowledged segment is truncated back to zero.
+//
+// Payload: [long wallTime][long elapsedTime][int cycle][byte outcome][utf8 text]. Results of
+// a named timer other than the default set TIMER_FLAG in the outcome byte and carry
+// [byte idLength][utf8 id] before the text.
+final class PendingLogQueue {
+    static final byte OUTCOME_WIN = 1;
+    static final byte OUTCOME_LOSS = 2;
+    private static final byte TIMER_FLAG = 0x40;
+    private static final int MAX_TIMER_BYTES = 64;
+
+    private static final int HEADER_BYTES = 8;
+    // wallTime, elapsedTime, cycle, outcome
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 4 + 1;
+    private static final int MAX_TEXT_BYTES = 16 * 1024;
+
+    private static PendingLogQueue instance;
+
+    static final class Entry {
+        final long cursor;
+        final long next;
+        final long wallTime;
+        final long elapsedTime;
+        final int cycle;
+        final byte outcome;
+        final String text;
+        final String timer;
+
+        Entry(long cursor, long next, long wallTime, long elapsedTime, int cycle, byte outcome, String text, String timer) {
+            this.cursor = cursor;
+            this.next = next;
+            this.wallTime = wallTime;
+            this.elapsedTime = elapsedTime;
+            this.cycle = cycle;
+            this.outcome = outcome;
+            this.text = text;
+            this.timer = timer;
+        }
+    }
+
+    private final FileChannel segment;
+    private final RandomAccessFile cursorFile;
+    private final Object syncLock = new Object();
+
+    private long base;
+    private long acked;
+    private volatile long writePos;
+    private long syncedTo;
+
+    static synchronized PendingLogQueue get(Context context) throws IOException {
+        if (instance == null) {
+            instance = new PendingLogQueue(new File(context.getFilesDir(), "pending_log"));
+            if (TimerStateStore.hasLegacyPreferences(context, "NativeLog")) {
+                instance.migrateLegacy(context);
+            }
+        }
+        return instance;
+    }
+
+    // Convenience for the notification, alert and activity writers. Failures are logged rather
+    // than thrown so a full disk never breaks the notification action itself. Every writer
+    // comes through here, so this is also where the timer's running stats, the CycleRollup and
+    // the queryable CycleHistory are updated, and where TimerEvents listeners hear about the
+    // result. The running stats follow the queue append: the service takes a result in them
+    // as proof the result was queued.
+    static void record(Context context, String timer, String action, String text, int cycle) {
+        long wallTime = System.currentTimeMillis();
+        byte outcome = outcomeForAction(action);
+        try {
+            get(context).append(timer, cycle, outcome, text, wallTime, SystemClock.elapsedRealtime());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        CycleOutcomeRing.get(context, timer).add(wallTime, cycle, outcome);
+        // Before the history append: a new rollup is filled from the history first
+        CycleRollup.record(context, wallTime, outcome);
+        CycleHistory.record(context, timer, wallTime, cycle, outcome, text);
+        TimerEvents.publish(context, TimerEvents.Event.result(timer, cycle, wallTime, outcome, text));
+    }
+
+    static void record(Context context, String action, String text, int cycle) {
+        record(context, TimerStateStore.DEFAULT_TIMER, action, text, cycle);
+    }
+
+    // Same, for writers outside the service that only know the persisted timer state.
+    static void record(Context context, String action, String text) {
+        record(context, action, text, TimerStateStore.get(context).currentCycle());
+    }
+
+    static String outcomeName(byte outcome) {
+        return outcome == OUTCOME_WIN ? "WIN" : "LOSS";
+    }
+
+    static byte outcomeForAction(String action) {
+        return "ACTION_WIN".equals(action) ? OUTCOME_WIN : OUTCOME_LOSS;
+    }
+
+    PendingLogQueue(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        segment = new RandomAccessFile(new File(dir, "segment"), "rw").getChannel();
+        cursorFile = new RandomAccessFile(new File(dir, "cursor"), "rw");
+
+        if (cursorFile.length() >= 16) {
+            cursorFile.seek(0);
+            base = cursorFile.readLong();
+            acked = cursorFile.readLong();
+        }
+        long length = segment.size();
+        if (acked > length) {
+            // Crashed between truncating a drained segment and recording the new base
+            base += acked;
+            acked = 0;
+            writeCursor();
+        }
+        writePos = recover(acked, length);
+        syncedTo = writePos;
+    }
+
+    // Appends one record; returns its logical cursor. The record is written through before
+    // returning, and concurrent appenders share a single fsync.
+    long append(int cycle, byte outcome, String text, long wallTime, long elapsedTime) throws IOException {
+        return append(TimerStateStore.DEFAULT_TIMER, cycle, outcome, text, wallTime, elapsedTime);
+    }
+
+    long append(String timer, int cycle, byte outcome, String text, long wallTime, long elapsedTime) throws IOException {
+        byte[] utf8 = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        int textLength = Math.min(utf8.length, MAX_TEXT_BYTES);
+        byte[] timerUtf8 = timer == null || TimerStateStore.DEFAULT_TIMER.equals(timer)
+                ? null : timer.getBytes(StandardCharsets.UTF_8);
+        int timerLength = timerUtf8 == null ? 0 : Math.min(timerUtf8.length, MAX_TIMER_BYTES);
+        int payloadLength = FIXED_PAYLOAD_BYTES + (timerUtf8 == null ? 0 : 1 + timerLength) + textLength;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0);
+        record.putLong(wallTime);
+        record.putLong(elapsedTime);
+        record.putInt(cycle);
+        if (timerUtf8 == null) {
+            record.put(outcome);
+        } else {
+            record.put((byte) (outcome | TIMER_FLAG));
+            record.put((byte) timerLength);
+            record.put(timerUtf8, 0, timerLength);
+        }
+        record.put(utf8, 0, textLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        long cursor;
+        long end;
+        synchronized (this) {
+            long pos = writePos;
+            while (record.hasRemaining()) {
+                pos += segment.write(record, pos);
+            }
+            cursor = base + writePos;
+            writePos = pos;
+            end = pos;
+        }
+        syncTo(end);
+        TimerMetrics.increment(TimerMetrics.STORAGE_WRITES);
+        return cursor;
+    }
+
+    private void syncTo(long end) throws IOException {
+        synchronized (syncLock) {
+            if (syncedTo >= end) return;
+            long target = writePos;
+            segment.force(false);
+            syncedTo = target;
+        }
+    }
+
+    // Reads up to max records starting at the given logical cursor. Cursors older than the
+    // acknowledged position are clamped to it.
+    synchronized List<Entry> read(long fromCursor, int max) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long pos = Math.max(fromCursor - base, acked);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (entries.size() < max && pos < writePos) {
+            header.clear();
+            readFully(header, pos);
+            int payloadLength = header.getInt(0);
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, pos + HEADER_BYTES);
+            payload.flip();
+
+            long wallTime = payload.getLong();
+            long elapsedTime = payload.getLong();
+            int cycle = payload.getInt();
+            byte outcome = payload.get();
+            String timer = TimerStateStore.DEFAULT_TIMER;
+            if ((outcome & TIMER_FLAG) != 0) {
+                outcome &= ~TIMER_FLAG;
+                int timerLength = payload.get() & 0xff;
+                timer = new String(payload.array(), payload.position(), timerLength, StandardCharsets.UTF_8);
+                payload.position(payload.position() + timerLength);
+            }
+            String text = new String(payload.array(), payload.position(), payloadLength - payload.position(), StandardCharsets.UTF_8);
+
+            long next = pos + HEADER_BYTES + payloadLength;
+            entries.add(new Entry(base + pos, base + next, wallTime, elapsedTime, cycle, outcome, text, timer));
+            pos = next;
+        }
+        return entries;
+    }
+
+    synchronized long ackedCursor() {
+        return base + acked;
+    }
+
+    synchronized long endCursor() {
+        return base + writePos;
+    }
+
+    // Marks everything before the given logical cursor as delivered.
+    synchronized void ack(long cursor) throws IOException {
+        long pos = Math.min(cursor - base, writePos);
+        if (pos <= acked) return;
+
+        // The ack is durable before the segment is touched, so a crash below can only leave
+        // acked > length, which the constructor turns into the new base
+        acked = pos;
+        writeCursor();
+        if (pos == writePos) {
+            // Fully drained: start the segment over so it never grows without bound
+            segment.truncate(0);
+            segment.force(false);
+            base += pos;
+            acked = 0;
+            writePos = 0;
+            synchronized (syncLock) {
+                syncedTo = 0;
+            }
+            writeCursor();
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        cursorFile.seek(0);
+        cursorFile.writeLong(base);
+        cursorFile.writeLong(acked);
+        cursorFile.getFD().sync();
+        TimerMetrics.increment(TimerMetrics.STORAGE_WRITES);
+    }
+
+    // Walks the unacknowledged records and cuts off a torn or corrupt tail.
+    private long recover(long pos, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES <= length) {
+            header.clear();
+            readFully(header, pos);
+            int payloadLength = header.getInt(0);
+            if (payloadLength < FIXED_PAYLOAD_BYTES || payloadLength > FIXED_PAYLOAD_BYTES + 1 + MAX_TIMER_BYTES + MAX_TEXT_BYTES
+                    || pos + HEADER_BYTES + payloadLength > length) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, pos + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, payloadLength);
+            if ((int) crc.getValue() != header.getInt(4)) break;
+            pos += HEADER_BYTES + payloadLength;
+        }
+        if (pos < length) {
+            segment.truncate(pos);
+            segment.force(false);
+        }
+        return pos;
+    }
+
+    private void readFully(ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = segment.read(dst, pos);
+            if (n < 0) throw new IOException("Unexpected end of pending log");
+            pos += n;
+        }
+    }
+
+    // Moves an entry left behind by the old single-slot NativeLog preference into the queue.
+    private void migrateLegacy(Context context) throws IOException {
+        SharedPreferences prefs = context.getSharedPreferences("NativeLog", Context.MODE_PRIVATE);
+        String input = prefs.getString("pending_input", null);
+        String type = prefs.getString("pending_type", null);
+        if (input != null && type != null) {
+            append(0, "WIN".equals(type) ? OUTCOME_WIN : OUTCOME_LOSS, input,
+                    System.currentTimeMillis(), SystemClock.elapsedRealtime());
+            prefs.edit().clear().commit();
+        }
+    }
+}
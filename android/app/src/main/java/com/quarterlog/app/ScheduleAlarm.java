@@ -0,0 +1,64 @@
+package com.quarterlog.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+// Keeps exactly one AlarmManager alarm armed for the earliest ScheduleEngine event. The
+// PendingIntent always uses the same request code, so arming again replaces the previous alarm
+// instead of adding one; DailyStartReceiver re-arms for the following event after each fire.
+final class ScheduleAlarm {
+    static final int REQUEST_CODE = 1001;
+    static final String EXTRA_SCHEDULE_ID = "scheduleId";
+    static final String EXTRA_TRIGGER_AT = "triggerAt";
+
+    private ScheduleAlarm() {}
+
+    // Arms the first event after `after`, or cancels the alarm if there are no schedules.
+    // Returns the wall-clock trigger time, or 0 when nothing is armed. Synchronized so a
+    // provider call and a receiver re-arming at once can't leave the older event armed.
+    static synchronized long rearm(Context context, long after) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return 0;
+
+        ScheduleEngine engine = ScheduleEngine.get(context);
+        int event = engine.nextEvent(after);
+        if (event < 0) {
+            alarmManager.cancel(pendingIntent(context, new Intent(context, DailyStartReceiver.class)));
+            return 0;
+        }
+        ScheduleEngine.Schedule schedule = engine.scheduleFor(event);
+        long triggerAt = engine.fireTime(event, after);
+
+        Intent intent = new Intent(context, DailyStartReceiver.class);
+        intent.putExtra("duration", schedule.duration);
+        intent.putExtra("totalCycles", schedule.totalCycles);
+        intent.putExtra("cyclesLeft", schedule.totalCycles); // Start fresh
+        intent.putExtra(EXTRA_SCHEDULE_ID, schedule.id);
+        intent.putExtra(EXTRA_TRIGGER_AT, triggerAt);
+        PendingIntent pendingIntent = pendingIntent(context, intent);
+
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            if (alarmManager.canScheduleExactAlarms()) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            } else {
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+            }
+        } else if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        }
+        return triggerAt;
+    }
+
+    private static PendingIntent pendingIntent(Context context, Intent intent) {
+        return PendingIntent.getBroadcast(
+            context,
+            REQUEST_CODE,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+}
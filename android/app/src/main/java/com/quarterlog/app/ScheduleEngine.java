@@ -0,0 +1,284 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Weekly auto-start schedules. Every (schedule, weekday) pair becomes one event keyed by its
+// minute of the week, and the events are kept in a sorted long[] of (weekMinute << 32 | schedule
+// index), so the next fire time is a single binary search however many schedules exist. Only
+// that one event is ever armed with AlarmManager (see ScheduleAlarm).
+//
+// Days use the web layer's numbering (0 = Sunday .. 6 = Saturday) as a bitmask.
+final class ScheduleEngine {
+    static final int ALL_DAYS = 0x7f;
+    static final int DEFAULT_CYCLES = 32;
+    static final String DAILY_ID = "daily";
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MAGIC = 0x514c5343; // "QLSC"
+    private static final int VERSION = 1;
+
+    static final class Schedule {
+        final String id;
+        final int days;
+        final int startMinute;
+        // Minute of day the window closes, or -1 if the schedule has no end time
+        final int endMinute;
+        final long duration;
+        final int totalCycles;
+
+        Schedule(String id, int days, int startMinute, int endMinute, long duration, int totalCycles) {
+            this.id = id;
+            this.days = days & ALL_DAYS;
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.duration = duration;
+            this.totalCycles = totalCycles > 0 ? totalCycles : cyclesFor(startMinute, endMinute, duration);
+        }
+
+        // Cycles that fit between start and end; windows may run past midnight.
+        static int cyclesFor(int startMinute, int endMinute, long duration) {
+            if (endMinute < 0 || duration <= 0) return DEFAULT_CYCLES;
+            int window = Math.floorMod(endMinute - startMinute, MINUTES_PER_DAY);
+            if (window == 0) window = MINUTES_PER_DAY;
+            return (int) Math.max(1, window * 60_000L / duration);
+        }
+    }
+
+    private static ScheduleEngine instance;
+
+    private final File file;
+    private final File tmpFile;
+    private final List<Schedule> schedules = new ArrayList<>();
+    private long[] events = new long[0];
+
+    static synchronized ScheduleEngine get(Context context) {
+        if (instance == null) {
+            instance = new ScheduleEngine(new File(context.getFilesDir(), "schedules.bin"));
+            if (!instance.load() && TimerStateStore.hasLegacyPreferences(context, "DailySchedule")) {
+                instance.migrateLegacy(context);
+            }
+        }
+        return instance;
+    }
+
+    ScheduleEngine(File file) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+    }
+
+    synchronized List<Schedule> schedules() {
+        return new ArrayList<>(schedules);
+    }
+
+    synchronized boolean isEmpty() {
+        return events.length == 0;
+    }
+
+    // Replaces every schedule in one write.
+    synchronized void setAll(List<Schedule> replacement) {
+        checkStartTimes(replacement);
+        schedules.clear();
+        schedules.addAll(replacement);
+        commit();
+    }
+
+    // Adds the schedule, or replaces the one with the same id.
+    synchronized void put(Schedule schedule) {
+        List<Schedule> updated = new ArrayList<>(schedules);
+        int index = indexOf(schedule.id);
+        if (index >= 0) {
+            updated.set(index, schedule);
+        } else {
+            updated.add(schedule);
+        }
+        checkStartTimes(updated);
+        schedules.clear();
+        schedules.addAll(updated);
+        commit();
+    }
+
+    synchronized void remove(String id) {
+        int index = indexOf(id);
+        if (index < 0) return;
+        schedules.remove(index);
+        commit();
+    }
+
+    // Index into events of the first event strictly after now, or -1 if there are none.
+    synchronized int nextEvent(long now) {
+        if (events.length == 0) return -1;
+        long probe = (long) (weekMinute(now) + 1) << 32;
+        int found = Arrays.binarySearch(events, probe);
+        int position = found >= 0 ? found : -found - 1;
+        return position < events.length ? position : 0;
+    }
+
+    synchronized Schedule scheduleFor(int event) {
+        return schedules.get((int) events[event]);
+    }
+
+    // Wall-clock time of the event's next occurrence after now.
+    synchronized long fireTime(int event, long now) {
+        int key = (int) (events[event] >>> 32);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        int today = calendar.get(Calendar.DAY_OF_WEEK) - 1;
+        int days = key / MINUTES_PER_DAY - today;
+        if (key <= weekMinute(calendar)) days += 7;
+        calendar.add(Calendar.DAY_OF_YEAR, days);
+        calendar.set(Calendar.HOUR_OF_DAY, (key % MINUTES_PER_DAY) / 60);
+        calendar.set(Calendar.MINUTE, key % 60);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    static int weekMinute(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        return weekMinute(calendar);
+    }
+
+    private static int weekMinute(Calendar calendar) {
+        return (calendar.get(Calendar.DAY_OF_WEEK) - 1) * MINUTES_PER_DAY
+                + calendar.get(Calendar.HOUR_OF_DAY) * 60
+                + calendar.get(Calendar.MINUTE);
+    }
+
+    // Every schedule starts the same timer and only one alarm is armed per minute of the week,
+    // so two schedules starting on the same day and minute would silently fire as one.
+    private static void checkStartTimes(List<Schedule> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            Schedule a = candidates.get(i);
+            for (int j = i + 1; j < candidates.size(); j++) {
+                Schedule b = candidates.get(j);
+                if (a.startMinute == b.startMinute && (a.days & b.days) != 0) {
+                    throw new IllegalArgumentException("Schedules " + a.id + " and " + b.id + " start at the same time");
+                }
+            }
+        }
+    }
+
+    private int indexOf(String id) {
+        for (int i = 0; i < schedules.size(); i++) {
+            if (schedules.get(i).id.equals(id)) return i;
+        }
+        return -1;
+    }
+
+    private void commit() {
+        rebuild();
+        try {
+            write();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void rebuild() {
+        int count = 0;
+        for (Schedule schedule : schedules) {
+            count += Integer.bitCount(schedule.days);
+        }
+        long[] rebuilt = new long[count];
+        int next = 0;
+        for (int i = 0; i < schedules.size(); i++) {
+            Schedule schedule = schedules.get(i);
+            for (int day = 0; day < 7; day++) {
+                if ((schedule.days & (1 << day)) == 0) continue;
+                long key = day * MINUTES_PER_DAY + schedule.startMinute;
+                rebuilt[next++] = key << 32 | i;
+            }
+        }
+        Arrays.sort(rebuilt);
+        events = rebuilt;
+    }
+
+    // Returns false if there is no valid file on disk.
+    synchronized boolean load() {
+        if (!file.isFile()) return false;
+        byte[] bytes;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+        } catch (IOException e) {
+            return false;
+        }
+        if (bytes.length < 16) return false;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        int stored = ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt();
+        if ((int) crc.getValue() != stored) return false;
+
+        List<Schedule> loaded = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.add(new Schedule(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readInt()));
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        schedules.clear();
+        schedules.addAll(loaded);
+        rebuild();
+        return true;
+    }
+
+    private void write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(schedules.size());
+        for (Schedule schedule : schedules) {
+            out.writeUTF(schedule.id);
+            out.writeInt(schedule.days);
+            out.writeInt(schedule.startMinute);
+            out.writeInt(schedule.endMinute);
+            out.writeLong(schedule.duration);
+            out.writeInt(schedule.totalCycles);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        try (FileOutputStream file = new FileOutputStream(tmpFile)) {
+            file.write(bytes.toByteArray());
+            file.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        TimerMetrics.increment(TimerMetrics.STORAGE_WRITES);
+    }
+
+    // One-time import of the single schedule scheduleDailyStart used to keep in preferences.
+    private void migrateLegacy(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences("DailySchedule", Context.MODE_PRIVATE);
+        if (!prefs.contains("enabled")) return;
+        if (prefs.getBoolean("enabled", false)) {
+            put(new Schedule(DAILY_ID, ALL_DAYS,
+                    prefs.getInt("hour", 9) * 60 + prefs.getInt("minute", 0), -1,
+                    prefs.getLong("duration", TimerStateStore.DEFAULT_DURATION),
+                    prefs.getInt("totalCycles", DEFAULT_CYCLES)));
+        }
+        prefs.edit().clear().apply();
+    }
+}
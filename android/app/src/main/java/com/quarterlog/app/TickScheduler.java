@@ -0,0 +1,91 @@
+package com.quarterlog.app;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Drives countdown refreshes for a deadline. Each tick is a one-shot task aimed at the next
+// moment the displayed value changes (a multiple of unitMs before the deadline), so ticks
+// never drift, and a tick that was held back by Doze is followed by exactly one catch-up
+// update rather than a burst. While nobody can see the screen no ticks are scheduled at all.
+final class TickScheduler {
+    interface Listener {
+        void onTick(long millisLeft);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final TimerEngine.Clock clock;
+    private final long unitMs;
+    private final Listener listener;
+
+    private ScheduledFuture<?> pending;
+    private long endTime;
+    private boolean active;
+    private boolean interactive = true;
+
+    TickScheduler(ScheduledExecutorService executor, TimerEngine.Clock clock, long unitMs, Listener listener) {
+        this.executor = executor;
+        this.clock = clock;
+        this.unitMs = unitMs;
+        this.listener = listener;
+    }
+
+    // Delay until the displayed (rounded-up) value of millisLeft next changes.
+    static long delayToNextBoundary(long millisLeft, long unitMs) {
+        if (millisLeft <= 0) return -1;
+        long remainder = millisLeft % unitMs;
+        return remainder == 0 ? unitMs : remainder;
+    }
+
+    synchronized void start(long endTime) {
+        this.endTime = endTime;
+        active = true;
+        scheduleNext();
+    }
+
+    synchronized void stop() {
+        active = false;
+        cancelPending();
+    }
+
+    // Screen on and unlocked. Coming back refreshes immediately, then resumes on boundaries.
+    synchronized void setInteractive(boolean interactive) {
+        if (this.interactive == interactive) return;
+        this.interactive = interactive;
+        if (!active) return;
+        if (interactive) {
+            cancelPending();
+            pending = executor.schedule(this::tick, 0, TimeUnit.MILLISECONDS);
+        } else {
+            cancelPending();
+        }
+    }
+
+    private void tick() {
+        long left;
+        synchronized (this) {
+            pending = null;
+            if (!active || !interactive) return;
+            left = endTime - clock.currentTimeMillis();
+        }
+        if (left > 0) listener.onTick(left);
+        synchronized (this) {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        cancelPending();
+        if (!active || !interactive) return;
+        long delay = delayToNextBoundary(endTime - clock.currentTimeMillis(), unitMs);
+        if (delay < 0) return;
+        pending = executor.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.quarterlog.app;
+
+// Cycle state machine behind TimerForegroundService. It has no Android dependencies: time
+// comes from a Clock and everything visible (notifications, persistence, alarms) goes through
+// Effects, so a whole day of cycles can be driven on the plain JVM.
+//
+//   IDLE --start--> RUNNING --expired--> AWAITING_RESULT --result--> RUNNING | IDLE
+final class TimerEngine {
+    static final int IDLE = 0;
+    static final int RUNNING = 1;
+    static final int AWAITING_RESULT = 2;
+
+    interface Clock {
+        long currentTimeMillis();
+
+        long elapsedRealtime();
+    }
+
+    interface Effects {
+        void showCountdown(long endTime, int cycle, int totalCycles);
+
+        void showAlert(int cycle, int totalCycles);
+
+        void recordResult(int cycle, byte outcome, String text);
+
+        void persist(long duration, int totalCycles, int cyclesLeft, long endTime);
+
+        void armExpiry(long triggerAtElapsed);
+
+        void cancelExpiry();
+
+        void finish();
+    }
+
+    private final Clock clock;
+    private final Effects effects;
+
+    private int phase = IDLE;
+    private long duration = TimerStateStore.DEFAULT_DURATION;
+    private int totalCycles;
+    private int cyclesLeft;
+    private long endTime;
+
+    TimerEngine(Clock clock, Effects effects) {
+        this.clock = clock;
+        this.effects = effects;
+    }
+
+    // Adopts persisted state without triggering any effects.
+    void restore(long duration, int totalCycles, int cyclesLeft, long endTime) {
+        this.duration = duration;
+        this.totalCycles = totalCycles;
+        this.cyclesLeft = cyclesLeft;
+        this.endTime = endTime;
+        if (cyclesLeft <= 0 || endTime <= 0) {
+            phase = IDLE;
+        } else {
+            phase = endTime <= clock.currentTimeMillis() ? AWAITING_RESULT : RUNNING;
+        }
+    }
+
+    void start(long duration, int totalCycles, int cyclesLeft) {
+        this.duration = duration;
+        this.totalCycles = totalCycles;
+        this.cyclesLeft = cyclesLeft;
+        beginCycle();
+    }
+
+    void onExpired() {
+        if (phase == IDLE) {
+            // Stale alarm for a day that already ended
+            effects.finish();
+            return;
+        }
+        effects.cancelExpiry();
+        phase = AWAITING_RESULT;
+        effects.showAlert(currentCycle(), totalCycles);
+    }
+
+    // Returns true if another cycle was started. Results that arrive while no cycle is waiting
+    // for one (e.g. a second tap on the same alert) are ignored.
+    boolean onResult(byte outcome, String text) {
+        if (phase != AWAITING_RESULT) {
+            if (phase == IDLE) effects.finish();
+            return phase == RUNNING;
+        }
+        effects.recordResult(currentCycle(), outcome, text);
+
+        // Loop Mechanism: Restart Timer instead of stopping, unless cycles are done
+        cyclesLeft--;
+        if (cyclesLeft > 0) {
+            beginCycle();
+            return true;
+        }
+        // No persist: finish() records the end of the day and discards the timer's state
+        halt();
+        return false;
+    }
+
+    void stop() {
+        halt();
+    }
+
+    int phase() {
+        return phase;
+    }
+
+    long duration() {
+        return duration;
+    }
+
+    int totalCycles() {
+        return totalCycles;
+    }
+
+    int cyclesLeft() {
+        return cyclesLeft;
+    }
+
+    long endTime() {
+        return endTime;
+    }
+
+    // 1-based index of the cycle currently counting down (or awaiting its result).
+    int currentCycle() {
+        return Math.max(1, totalCycles - cyclesLeft + 1);
+    }
+
+    private void beginCycle() {
+        long now = clock.currentTimeMillis();
+        endTime = now + duration;
+        phase = RUNNING;
+        // Save new state for App sync, as a single write for the whole transition
+        effects.persist(duration, totalCycles, cyclesLeft, endTime);
+        effects.showCountdown(endTime, currentCycle(), totalCycles);
+        effects.armExpiry(clock.elapsedRealtime() + duration);
+    }
+
+    private void halt() {
+        phase = IDLE;
+        effects.cancelExpiry();
+        effects.finish();
+    }
+}
@@ -0,0 +1,151 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Push channel from the timer to whoever shows it, so the web layer hears about every cycle
+// and result as it happens instead of polling. Events are delivered synchronously on the
+// publishing thread to listeners in this process.
+//
+// With the timerProcess build option the listener (TimerPlugin) lives in the other process:
+// the timer process then also publishes each event as a ContentResolver change notification
+// whose Uri carries the event, and subscribe() observes those.
+final class TimerEvents {
+    static final int CYCLE_STARTED = 0;
+    static final int CYCLE_COMPLETE = 1;
+    static final int RESULT = 2;
+    static final int TIMER_STOPPED = 3;
+
+    // Event names as seen by plugin listeners, indexed like the types above
+    static final String[] NAMES = {
+            "cycleStart",
+            "cycleComplete",
+            "logResult",
+            "timerStop",
+    };
+
+    interface Listener {
+        void onTimerEvent(Event event);
+    }
+
+    // endTime is only set for CYCLE_STARTED; outcome and text only for RESULT.
+    static final class Event {
+        final int type;
+        final String timer;
+        final int cycle;
+        final int totalCycles;
+        final long time;
+        final long endTime;
+        final byte outcome;
+        final String text;
+
+        Event(int type, String timer, int cycle, int totalCycles, long time, long endTime, byte outcome, String text) {
+            this.type = type;
+            this.timer = timer;
+            this.cycle = cycle;
+            this.totalCycles = totalCycles;
+            this.time = time;
+            this.endTime = endTime;
+            this.outcome = outcome;
+            this.text = text;
+        }
+
+        static Event cycleStarted(String timer, int cycle, int totalCycles, long endTime) {
+            return new Event(CYCLE_STARTED, timer, cycle, totalCycles, System.currentTimeMillis(), endTime, (byte) 0, null);
+        }
+
+        static Event cycleComplete(String timer, int cycle, int totalCycles) {
+            return new Event(CYCLE_COMPLETE, timer, cycle, totalCycles, System.currentTimeMillis(), 0, (byte) 0, null);
+        }
+
+        static Event result(String timer, int cycle, long wallTime, byte outcome, String text) {
+            return new Event(RESULT, timer, cycle, 0, wallTime, 0, outcome, text);
+        }
+
+        static Event timerStopped(String timer, int totalCycles) {
+            return new Event(TIMER_STOPPED, timer, 0, totalCycles, System.currentTimeMillis(), 0, (byte) 0, null);
+        }
+
+        Uri toUri(Context context) {
+            Uri.Builder builder = eventsUri(context).buildUpon()
+                    .appendPath(String.valueOf(type))
+                    .appendQueryParameter("timer", timer)
+                    .appendQueryParameter("cycle", String.valueOf(cycle))
+                    .appendQueryParameter("totalCycles", String.valueOf(totalCycles))
+                    .appendQueryParameter("time", String.valueOf(time))
+                    .appendQueryParameter("endTime", String.valueOf(endTime))
+                    .appendQueryParameter("outcome", String.valueOf(outcome));
+            if (text != null) builder.appendQueryParameter("text", text);
+            return builder.build();
+        }
+
+        // Null for a Uri that is not an event, e.g. the bare events Uri
+        static Event fromUri(Uri uri) {
+            try {
+                int type = Integer.parseInt(uri.getLastPathSegment());
+                if (type < 0 || type >= NAMES.length) return null;
+                return new Event(type,
+                        uri.getQueryParameter("timer"),
+                        Integer.parseInt(uri.getQueryParameter("cycle")),
+                        Integer.parseInt(uri.getQueryParameter("totalCycles")),
+                        Long.parseLong(uri.getQueryParameter("time")),
+                        Long.parseLong(uri.getQueryParameter("endTime")),
+                        Byte.parseByte(uri.getQueryParameter("outcome")),
+                        uri.getQueryParameter("text"));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static ContentObserver observer;
+
+    private TimerEvents() {}
+
+    static Uri eventsUri(Context context) {
+        return Uri.parse("content://" + context.getPackageName() + ".timer/events");
+    }
+
+    static void publish(Context context, Event event) {
+        dispatch(event);
+        if (!TimerProcess.fileSuffix().isEmpty()) {
+            // Listeners live in the main process; observers there get it within a Binder hop
+            context.getContentResolver().notifyChange(event.toUri(context), null);
+        }
+    }
+
+    static void subscribe(Context context, Listener listener) {
+        listeners.addIfAbsent(listener);
+        observeOtherProcess(context.getApplicationContext());
+    }
+
+    static void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void dispatch(Event event) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onTimerEvent(event);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Only the timer process notifies, so in a single-process build this never fires.
+    private static synchronized void observeOtherProcess(Context context) {
+        if (observer != null || !TimerProcess.fileSuffix().isEmpty()) return;
+        observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                Event event = uri == null ? null : Event.fromUri(uri);
+                if (event != null) dispatch(event);
+            }
+        };
+        context.getContentResolver().registerContentObserver(eventsUri(context), true, observer);
+    }
+}
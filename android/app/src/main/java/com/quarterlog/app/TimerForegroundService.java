@@ -1,313 +1,562 @@
 package com.quarterlog.app;
 
+import android.app.AlarmManager;
+import android.app.KeyguardManager;
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
 import android.os.IBinder;
 import android.os.PowerManager;
-import androidx.core.app.NotificationCompat;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.core.app.RemoteInput;
-import com.quarterlog.app.MainActivity;
-import com.quarterlog.app.R;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 public class TimerForegroundService extends Service {
+    private static final String TAG = "TimerForegroundService";
     public static final String CHANNEL_ID = "QuarterLogLive_v6";
     public static final String ALERT_CHANNEL_ID = "QuarterLogAlert_v2_Silent";
     public static final int NOTIFICATION_ID = 1;
     public static final int ALERT_NOTIFICATION_ID = 2;
+    public static final String ACTION_EXPIRE = "ACTION_EXPIRE";
+    // Sent by BootReceiver when a day was interrupted by a reboot
+    public static final String ACTION_RESUME = "ACTION_RESUME";
+    // Names the timer a start, STOP or result intent is for; the default timer if absent
+    public static final String EXTRA_TIMER_ID = "timerId";
+    // Result text typed on AlertActivity, for results that don't come through RemoteInput
+    public static final String EXTRA_INPUT_TEXT = "NATIVE_INPUT_TEXT";
+    // elapsedRealtime of the AlertActivity tap a result intent carries
+    static final String EXTRA_TAPPED_AT = "tappedAt";
+    // The default timer plus up to seven named ones
+    static final int MAX_TIMERS = 8;
+
+    // Upper bound only; the lock is released as soon as the alert is posted
+    private static final long EXPIRY_WAKELOCK_TIMEOUT_MS = 10 * 1000;
+    // Timers due this close together are served by the same wakeup
+    static final long EXPIRY_BATCH_MS = 1000;
+    private static PowerManager.WakeLock expiryWakeLock;
+    private static long expiryWakeLockSince;
+
+    private static final TimerEngine.Clock CLOCK = new TimerEngine.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
     
-    private ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> timerHandle;
-    private PowerManager.WakeLock wakeLock;
-    
-    private int totalCycles = 0;
-    private int cyclesLeft = 0;
-    private long endTime = 0;
-    private long currentDuration = 15 * 60 * 1000;
+    // Live timers by slot; slot 0 is reserved for the default timer
+    private final CycleTimer[] timers = new CycleTimer[MAX_TIMERS];
+    // Expiry of every running timer. Only the earliest is armed with AlarmManager.
+    private final DeadlineHeap deadlines = new DeadlineHeap(MAX_TIMERS);
+    // Deadline the expiry alarm is currently set for: -1 for none, MIN_VALUE if unknown
+    private long armedDeadline = Long.MIN_VALUE;
+    private int foregroundSlot = -1;
+
+    private BroadcastReceiver screenReceiver;
+    private AlarmManager alarmManager;
+    private NotificationManager notificationManager;
+    private PendingIntent expiryIntent;
 
     @Override
     public void onCreate() {
+        long createdAt = SystemClock.elapsedRealtime();
         super.onCreate();
-        createNotificationChannel();
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "QuarterLog::TimerWakeLock");
-        
-        // Restore state
-        android.content.SharedPreferences prefs = getSharedPreferences("TimerState", MODE_PRIVATE);
-        currentDuration = prefs.getLong("currentDuration", 15 * 60 * 1000);
-        totalCycles = prefs.getInt("totalCycles", 0);
-        cyclesLeft = prefs.getInt("cyclesLeft", 0);
+        TimerMetrics.attach(getFilesDir());
+        TimerLatency.attach(getFilesDir());
+        TimerNotifications.createChannels(this);
+        if (!TimerNotifications.USES_CHRONOMETER) {
+            registerScreenReceiver();
+        }
+        alarmManager = (AlarmManager) getSystemService(ALARM_SERVICE);
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+
+        // Replay every timer's journal
+        for (String id : TimerStateStore.timerIds(this)) {
+            try {
+                restore(id);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (liveTimers() > 0) {
+            // Recreated in the middle of a day, e.g. after the process was killed
+            TimerMetrics.increment(TimerMetrics.SERVICE_RESTARTS);
+            TimerLatency.record(TimerLatency.RESUME, SystemClock.elapsedRealtime() - createdAt);
+        }
+        rearmExpiry();
     }
     
-        @Override
-        public int onStartCommand(Intent intent, int flags, int startId) {
-            if (intent == null) return START_NOT_STICKY;
-            
-            String action = intent.getAction();
-            
-            if ("STOP".equals(action)) {
-                stopTimer();
-                stopForeground(true);
-                stopSelf();
-                if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
-                return START_NOT_STICKY;
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        TimerTrace.begin(TimerTrace.START_COMMAND, TimerTrace.nameId(intent == null ? null : intent.getAction()));
+        try {
+            return handleCommand(intent);
+        } finally {
+            TimerTrace.end(TimerTrace.START_COMMAND);
+        }
+    }
+
+    private int handleCommand(Intent intent) {
+        if (intent == null || ACTION_RESUME.equals(intent.getAction())) {
+            // Restarted after the process was killed, or by BootReceiver; onCreate has already
+            // replayed the journal. A RESUME reaching a service that was running anyway came
+            // through startForegroundService and still has to be answered with startForeground.
+            CycleTimer owner = foregroundSlot >= 0 ? timers[foregroundSlot] : null;
+            if (intent != null && owner != null) owner.repost();
+            stopIfIdle();
+            return liveTimers() > 0 ? START_STICKY : START_NOT_STICKY;
+        }
+        
+        String action = intent.getAction();
+        String timerId = intent.getStringExtra(EXTRA_TIMER_ID);
+        if (timerId == null) timerId = TimerStateStore.DEFAULT_TIMER;
+        
+        if ("STOP".equals(action)) {
+            CycleTimer timer = find(timerId);
+            if (timer != null) {
+                timer.engine.stop();
+            } else {
+                stopIfIdle();
             }
-    
-                    if ("ACTION_WIN".equals(action) || "ACTION_LOSS".equals(action)) {
-                        String inputText = "";
-                        android.os.Bundle remoteInput = RemoteInput.getResultsFromIntent(intent);
-                        if (remoteInput != null) {
-                            CharSequence val = remoteInput.getCharSequence("log_input");
-                            if (val != null) inputText = val.toString();
-                        }
-
-                        getSharedPreferences("NativeLog", MODE_PRIVATE).edit()
-                            .putString("pending_input", inputText)
-                            .putString("pending_type", "ACTION_WIN".equals(action) ? "WIN" : "LOSS")
-                            .apply();
-                            
-                        Intent broadcast = new Intent("com.quarterlog.app.UPDATE_LOG");
-                        broadcast.setPackage(getPackageName());
-                        sendBroadcast(broadcast);
-
-                        NotificationManager mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-                        if (mNotificationManager != null) {
-                            mNotificationManager.cancel(ALERT_NOTIFICATION_ID);
-                        }
-                        
-                        // Loop Mechanism: Restart Timer instead of stopping, unless cycles are done
-                        cyclesLeft--;
-                        getSharedPreferences("TimerState", MODE_PRIVATE).edit().putInt("cyclesLeft", cyclesLeft).apply();
-                        
-                        if (cyclesLeft > 0) {
-                            endTime = System.currentTimeMillis() + currentDuration;
-                            
-                            // Save new state for App sync
-                            getSharedPreferences("TimerState", MODE_PRIVATE).edit()
-                                .putLong("endTime", endTime)
-                                .putInt("cyclesLeft", cyclesLeft)
-                                .apply();
-
-                            startForeground(NOTIFICATION_ID, createNotification(currentDuration));
-                            startTimer();
-                            return START_STICKY;
-                        } else {
-                            stopForeground(true);
-                            stopSelf();
-                            if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
-                            return START_NOT_STICKY;
-                        }
-                    }    
-            long durationMs = intent.getLongExtra("duration", 15 * 60 * 1000); 
-            currentDuration = durationMs;
-            totalCycles = intent.getIntExtra("totalCycles", 0);
-            cyclesLeft = intent.getIntExtra("cyclesLeft", 0);
-            
-            getSharedPreferences("TimerState", MODE_PRIVATE).edit()
-                .putLong("currentDuration", currentDuration)
-                .putInt("totalCycles", totalCycles)
-                .putInt("cyclesLeft", cyclesLeft)
-                .apply();
-            
-            endTime = System.currentTimeMillis() + durationMs;
-    
-            startForeground(NOTIFICATION_ID, createNotification(durationMs));
-            
-            if (wakeLock != null) {
-                if (wakeLock.isHeld()) wakeLock.release();
-                wakeLock.acquire(durationMs + 30000); 
+            return liveTimers() > 0 ? START_STICKY : START_NOT_STICKY;
+        }
+
+        if (ACTION_EXPIRE.equals(action)) {
+            try {
+                expireDueTimers();
+            } finally {
+                releaseExpiryWakeLock();
             }
-    
-            startTimer();
-    
             return START_STICKY;
         }
-        
-        private void startTimer() {
-            if (timerHandle != null && !timerHandle.isCancelled()) {
-                timerHandle.cancel(false);
+
+        if ("ACTION_WIN".equals(action) || "ACTION_LOSS".equals(action)) {
+            TimerMetrics.increment(TimerMetrics.ACTIONS_PROCESSED);
+            String inputText = "";
+            android.os.Bundle remoteInput = RemoteInput.getResultsFromIntent(intent);
+            if (remoteInput != null) {
+                CharSequence val = remoteInput.getCharSequence("log_input");
+                if (val != null) inputText = val.toString();
+            } else if (intent.hasExtra(EXTRA_INPUT_TEXT)) {
+                inputText = intent.getStringExtra(EXTRA_INPUT_TEXT);
             }
-    
-            timerHandle = scheduler.scheduleAtFixedRate(() -> {
-                long remaining = endTime - System.currentTimeMillis();
-                if (remaining <= 0) {
-                    triggerAlertNotification();
-                    // Don't stopSelf() automatically here if we want to wait for input
-                    // But we do need to stop the countdown
-                    if (timerHandle != null) timerHandle.cancel(false);
-                    // Keep WakeLock? Maybe release until next start
-                    if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
-                } else {
-                    updateNotification(remaining);
+
+            NotificationManager mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            if (mNotificationManager != null) {
+                mNotificationManager.cancel(ALERT_NOTIFICATION_ID);
+            }
+
+            CycleTimer timer = find(timerId);
+            if (timer == null) {
+                // Result for a timer whose day already ended
+                stopIfIdle();
+            } else {
+                timer.engine.onResult(PendingLogQueue.outcomeForAction(action), inputText);
+                if (intent.hasExtra(EXTRA_TAPPED_AT) && timer.engine.phase() == TimerEngine.RUNNING) {
+                    // onResult has logged the result and posted the next countdown
+                    TimerLatency.record(TimerLatency.TAP_TO_NEXT_CYCLE,
+                            SystemClock.elapsedRealtime() - intent.getLongExtra(EXTRA_TAPPED_AT, 0));
                 }
-            }, 0, 1000, TimeUnit.MILLISECONDS);
+            }
+            return liveTimers() > 0 ? START_STICKY : START_NOT_STICKY;
         }
-        
-        private void stopTimer() {
-            if (timerHandle != null) {
-                timerHandle.cancel(false);
-                timerHandle = null;
+
+        CycleTimer timer = find(timerId);
+        if (timer == null) timer = create(timerId);
+        if (timer == null) {
+            // TimerProvider claims the slot before starting a timer, so only a start that
+            // bypassed it can get here
+            Log.w(TAG, "No free timer slot for " + timerId);
+            stopIfIdle();
+            return liveTimers() > 0 ? START_STICKY : START_NOT_STICKY;
+        }
+        long durationMs = intent.getLongExtra("duration", TimerStateStore.DEFAULT_DURATION);
+        timer.engine.start(durationMs, intent.getIntExtra("totalCycles", 0), intent.getIntExtra("cyclesLeft", 0));
+        if (intent.hasExtra(DailyStartReceiver.EXTRA_RECEIVED_AT)) {
+            TimerLatency.record(TimerLatency.DAILY_START,
+                    SystemClock.elapsedRealtime() - intent.getLongExtra(DailyStartReceiver.EXTRA_RECEIVED_AT, 0));
+        }
+        return START_STICKY;
+    }
+
+    // One timer's cycle state machine plus the notifications and state file it drives.
+    private final class CycleTimer implements TimerEngine.Effects {
+        final String id;
+        final int slot;
+        final int notificationId;
+        final TimerStateStore state;
+        final TimerJournal journal;
+        final CycleOutcomeRing outcomes;
+        final TimerNotifications notifications;
+        final TimerEngine engine;
+        final TickScheduler ticks;
+
+        CycleTimer(String id, int slot) {
+            this.id = id;
+            this.slot = slot;
+            notificationId = notificationId(slot);
+            Context context = TimerForegroundService.this;
+            state = TimerStateStore.get(context, id);
+            journal = TimerJournal.get(context, id);
+            outcomes = CycleOutcomeRing.get(context, id);
+            notifications = new TimerNotifications(context, id, slot, notificationId);
+            engine = new TimerEngine(CLOCK, this);
+            ticks = TimerNotifications.USES_CHRONOMETER ? null
+                    : new TickScheduler(TimerScheduler.get(), CLOCK, CountdownText.UNIT_MS, this::updateNotification);
+            if (ticks != null) ticks.setInteractive(isScreenVisible());
+        }
+
+        @Override
+        public void showCountdown(long endTime, int cycle, int totalCycles) {
+            TimerTrace.begin(TimerTrace.CREATE_NOTIFICATION, cycle);
+            try {
+                post(this, notifications.countdown(endTime, cycle, totalCycles, outcomes.streak()));
+            } finally {
+                TimerTrace.end(TimerTrace.CREATE_NOTIFICATION);
+            }
+            TimerEvents.publish(TimerForegroundService.this, TimerEvents.Event.cycleStarted(id, cycle, totalCycles, endTime));
+
+            if (ticks != null) {
+                // Pre-N fallback: the text only shows whole minutes, so refresh it on the
+                // minute boundaries of the deadline, and only while the screen can be seen.
+                ticks.start(endTime);
             }
         }
-    
-        private void createNotificationChannel() {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                NotificationManager manager = getSystemService(NotificationManager.class);
-     
-                                        NotificationChannel serviceChannel = new NotificationChannel(
-     
-                                                CHANNEL_ID,
-     
-                                                "Live Timer Status",
-     
-                                                NotificationManager.IMPORTANCE_DEFAULT 
-     
-                                        );                serviceChannel.setDescription("Shows the active cycle countdown");
-                serviceChannel.setSound(null, null);
-                serviceChannel.enableVibration(false);
-                serviceChannel.setShowBadge(false);
-                serviceChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
-                manager.createNotificationChannel(serviceChannel);
-    
-                NotificationChannel alertChannel = new NotificationChannel(
-                        ALERT_CHANNEL_ID,
-                        "Cycle Complete Alert",
-                        NotificationManager.IMPORTANCE_HIGH
-                );
-                alertChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
-                manager.createNotificationChannel(alertChannel);
+
+        @Override
+        public void showAlert(int cycle, int totalCycles) {
+            TimerTrace.begin(TimerTrace.TRIGGER_ALERT, cycle);
+            TimerLatency.record(TimerLatency.ALERT_DELAY, System.currentTimeMillis() - engine.endTime());
+            stopTicks();
+            journal.append(TimerJournal.ALERTED, engine.duration(), totalCycles, engine.cyclesLeft(), engine.endTime());
+            try {
+                // startForeground rather than notify(): after process death the alarm restarts us
+                // through startForegroundService, which must be answered with startForeground.
+                post(this, notifications.alert(cycle, totalCycles));
+                TimerMetrics.increment(TimerMetrics.ALERT_FIRES);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                TimerTrace.end(TimerTrace.TRIGGER_ALERT);
             }
+            TimerEvents.publish(TimerForegroundService.this, TimerEvents.Event.cycleComplete(id, cycle, totalCycles));
         }
-    
-        private Notification createNotification(long millisUntilFinished) {
-            Intent notificationIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 
-                    0, notificationIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-    
-            long seconds = Math.max(0, millisUntilFinished / 1000);
-            long min = seconds / 60;
-            long sec = seconds % 60;
-            String timeString = String.format("%02d:%02d", min, sec);
-            
-            // Title left blank per user request
-            String title = ""; 
-    
-            int iconResId = getResources().getIdentifier("ic_stat_status_bar_logo", "drawable", getPackageName());
-            if (iconResId == 0) iconResId = R.mipmap.ic_launcher;
-    
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                    .setContentTitle(title)
-                    .setContentText(timeString)
-                    .setSmallIcon(iconResId)
-                    .setContentIntent(pendingIntent)
-                    .setOnlyAlertOnce(true) 
-                    .setOngoing(true)
-                    .setLocalOnly(true)
-                    .setCategory(NotificationCompat.CATEGORY_ALARM)
-                    .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
-    
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                builder.setForegroundServiceBehavior(Notification.FOREGROUND_SERVICE_IMMEDIATE);
+
+        @Override
+        public void recordResult(int cycle, byte outcome, String text) {
+            // Also publishes the result to TimerEvents listeners. Journaled only once it is
+            // queued, so a RESULT record never stands for a result that was lost.
+            PendingLogQueue.record(TimerForegroundService.this, id,
+                    outcome == PendingLogQueue.OUTCOME_WIN ? "ACTION_WIN" : "ACTION_LOSS", text, cycle);
+            journal.append(TimerJournal.RESULT, engine.duration(), engine.totalCycles(), engine.cyclesLeft(), engine.endTime());
+        }
+
+        @Override
+        public void persist(long duration, int totalCycles, int cyclesLeft, long endTime) {
+            if (cyclesLeft > 0) {
+                journal.append(TimerJournal.STARTED, duration, totalCycles, cyclesLeft, endTime);
             }
-    
-            return builder.build();
+            state.update(duration, totalCycles, cyclesLeft, endTime);
         }
-    
+
+        @Override
+        public void armExpiry(long triggerAtElapsed) {
+            deadlines.set(slot, triggerAtElapsed);
+            rearmExpiry();
+        }
+
+        @Override
+        public void cancelExpiry() {
+            stopTicks();
+            deadlines.remove(slot);
+            rearmExpiry();
+        }
+
+        @Override
+        public void finish() {
+            journal.append(TimerJournal.STOPPED, engine.duration(), engine.totalCycles(), engine.cyclesLeft(), engine.endTime());
+            remove(this);
+            TimerEvents.publish(TimerForegroundService.this, TimerEvents.Event.timerStopped(id, engine.totalCycles()));
+        }
+
+        // Whether the result for the record's cycle was queued, by its entry in the running
+        // stats, which PendingLogQueue.record updates after the queue append.
+        boolean resultQueued(TimerJournal.Record record) {
+            int cycle = Math.max(1, record.totalCycles - record.cyclesLeft + 1);
+            return outcomes.size() > 0 && outcomes.cycle(0) == cycle && outcomes.time(0) >= record.endTime;
+        }
+
+        // Posts whatever this timer currently shows again, e.g. to take over the foreground.
+        void repost() {
+            if (engine.phase() == TimerEngine.AWAITING_RESULT) {
+                post(this, notifications.alert(engine.currentCycle(), engine.totalCycles()));
+            } else if (engine.phase() == TimerEngine.RUNNING) {
+                post(this, notifications.countdown(engine.endTime(), engine.currentCycle(), engine.totalCycles(), outcomes.streak()));
+            }
+        }
+
+        void stopTicks() {
+            if (ticks != null) {
+                ticks.stop();
+            }
+            notifications.stopCountdown();
+        }
+
         private void updateNotification(long millisUntilFinished) {
             try {
-                Notification notification = createNotification(millisUntilFinished);
-                NotificationManager mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-                if (mNotificationManager != null) {
-                    mNotificationManager.notify(NOTIFICATION_ID, notification);
+                TimerMetrics.increment(TimerMetrics.TICKS);
+                if (notifications.updateCountdown(millisUntilFinished)) {
+                    TimerMetrics.increment(TimerMetrics.NOTIFICATION_POSTS);
                 }
             } catch (Exception e) {}
         }
-        
-        private void triggerAlertNotification() {
-            try {
-                // stopForeground(true); // Don't stop foreground, we want to stay alive to receive action
-                
-                Intent fullScreenIntent = new Intent(this, AlertActivity.class);
-                fullScreenIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(this, 
-                        99, fullScreenIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-    
-                Intent notificationIntent = new Intent(this, MainActivity.class);
-                notificationIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP); 
-                PendingIntent pendingIntent = PendingIntent.getActivity(this, 
-                        0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-    
-                int iconResId = getResources().getIdentifier("ic_stat_status_bar_logo", "drawable", getPackageName());
-                if (iconResId == 0) iconResId = R.mipmap.ic_launcher;
-                
-                int current = Math.max(1, totalCycles - cyclesLeft + 1);
-                String contentText = "Declare your status for Cycle " + current + "/" + totalCycles;
-                
-                // Add RemoteInput for text entry
-                RemoteInput remoteInput = new RemoteInput.Builder("log_input")
-                        .setLabel("What did you do?")
-                        .build();
-
-                Intent winIntent = new Intent(this, TimerForegroundService.class);
-                winIntent.setAction("ACTION_WIN");
-                PendingIntent winPendingIntent = PendingIntent.getService(this, 10, winIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
-    
-                NotificationCompat.Action winAction = new NotificationCompat.Action.Builder(
-                        0, "DONE", winPendingIntent)
-                        .addRemoteInput(remoteInput)
-                        .build();
-                
-                Intent lossIntent = new Intent(this, TimerForegroundService.class);
-                lossIntent.setAction("ACTION_LOSS");
-                PendingIntent lossPendingIntent = PendingIntent.getService(this, 11, lossIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
-    
-                NotificationCompat.Action lossAction = new NotificationCompat.Action.Builder(
-                        0, "MISS", lossPendingIntent)
-                        .addRemoteInput(remoteInput)
-                        .build();
-    
-                            Notification notification = new NotificationCompat.Builder(this, ALERT_CHANNEL_ID)
-                                    .setContentTitle("Cycle Complete")
-                                    .setContentText(contentText)
-                                    .setSmallIcon(iconResId)
-                                    .setContentIntent(pendingIntent)
-                                    .setAutoCancel(false) // Don't dismiss on click
-                                    .setOngoing(true)     // Persistent
-                                    .setPriority(NotificationCompat.PRIORITY_MAX)
-                                    .setCategory(NotificationCompat.CATEGORY_ALARM)
-                                    .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                                    .addAction(winAction)
-                                    .addAction(lossAction)
-                                    .setSound(null)
-                                    .setVibrate(new long[]{0L})
-                                    .build();    
-                NotificationManager mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-                if (mNotificationManager != null) {
-                    mNotificationManager.notify(NOTIFICATION_ID, notification); 
+    }
+
+    private CycleTimer find(String id) {
+        for (CycleTimer timer : timers) {
+            if (timer != null && timer.id.equals(id)) return timer;
+        }
+        return null;
+    }
+
+    // Takes the default timer's reserved slot or the first free one; null if all are in use.
+    private CycleTimer create(String id) {
+        if (!TimerSlots.claim(this, id)) return null;
+        int slot = -1;
+        if (TimerStateStore.DEFAULT_TIMER.equals(id)) {
+            slot = 0;
+        } else {
+            for (int i = 1; i < MAX_TIMERS && slot < 0; i++) {
+                if (timers[i] == null) slot = i;
+            }
+            if (slot < 0) return null;
+        }
+        CycleTimer timer = new CycleTimer(id, slot);
+        timers[slot] = timer;
+        return timer;
+    }
+
+    // Picks a timer up where its journal left off and puts it back on screen. An alert that came
+    // due while the process was dead fires now; one that had already fired is only shown again,
+    // so every alert fires exactly once.
+    private void restore(String id) {
+        TimerJournal.Record record = TimerJournal.replay(this, id);
+        if (!record.live()) {
+            TimerStateStore.discard(this, id);
+            CycleOutcomeRing.discard(this, id);
+            TimerJournal.discard(this, id);
+            TimerSlots.release(id);
+            return;
+        }
+        CycleTimer timer = create(id);
+        if (timer == null) return;
+        TimerEngine engine = timer.engine;
+        engine.restore(record.duration, record.totalCycles, record.cyclesLeft, record.endTime);
+        if (record.type == TimerJournal.RESULT
+                || engine.phase() == TimerEngine.AWAITING_RESULT && timer.resultQueued(record)) {
+            // Killed between taking a result and starting the next cycle, possibly before the
+            // result was journaled
+            if (record.cyclesLeft > 1) {
+                engine.start(record.duration, record.totalCycles, record.cyclesLeft - 1);
+            } else {
+                // That was the day's last result; like onResult, end it without a state write
+                engine.stop();
+            }
+        } else if (engine.phase() == TimerEngine.RUNNING) {
+            long left = record.endTime - CLOCK.currentTimeMillis();
+            deadlines.set(timer.slot, CLOCK.elapsedRealtime() + left);
+            timer.repost();
+            if (timer.ticks != null) timer.ticks.start(record.endTime);
+        } else if (record.type == TimerJournal.ALERTED) {
+            timer.repost();
+        } else {
+            timer.showAlert(engine.currentCycle(), engine.totalCycles());
+        }
+    }
+
+    private int liveTimers() {
+        int count = 0;
+        for (CycleTimer timer : timers) {
+            if (timer != null) count++;
+        }
+        return count;
+    }
+
+    // The expiry alarm fired: alert every timer that is due. Each one's cancelExpiry takes it
+    // out of the heap and re-aims the alarm at the next deadline.
+    private void expireDueTimers() {
+        long now = CLOCK.elapsedRealtime();
+        boolean fired = false;
+        while (!deadlines.isEmpty() && deadlines.peekDeadline() <= now + EXPIRY_BATCH_MS) {
+            timers[deadlines.peek()].engine.onExpired();
+            fired = true;
+        }
+        if (!fired) {
+            // Stale or early alarm. Started through startForegroundService, so still answer
+            // with startForeground if anything is running, and aim the alarm again.
+            CycleTimer owner = foregroundSlot >= 0 ? timers[foregroundSlot] : null;
+            if (owner != null) {
+                owner.repost();
+            } else {
+                stopIfIdle();
+            }
+            armedDeadline = Long.MIN_VALUE;
+            rearmExpiry();
+        }
+    }
+
+    static int notificationId(int slot) {
+        return slot == 0 ? NOTIFICATION_ID : 100 + slot;
+    }
+
+    // Every timer posts through startForeground, so the service stays foreground for as long
+    // as any timer is live and the most recently updated one owns the foreground slot.
+    private void post(CycleTimer timer, Notification notification) {
+        startForeground(timer.notificationId, notification);
+        foregroundSlot = timer.slot;
+        TimerMetrics.increment(TimerMetrics.NOTIFICATION_POSTS);
+    }
+
+    private void remove(CycleTimer timer) {
+        timer.stopTicks();
+        deadlines.remove(timer.slot);
+        if (timers[timer.slot] == timer) timers[timer.slot] = null;
+        TimerStateStore.discard(this, timer.id);
+        CycleOutcomeRing.discard(this, timer.id);
+        TimerJournal.discard(this, timer.id);
+        TimerSlots.release(timer.id);
+        rearmExpiry();
+
+        if (liveTimers() == 0) {
+            foregroundSlot = -1;
+            stopForeground(true);
+            stopSelf();
+            return;
+        }
+        if (foregroundSlot == timer.slot) {
+            for (CycleTimer other : timers) {
+                if (other != null) {
+                    other.repost();
+                    break;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
         }
+        if (notificationManager != null) {
+            notificationManager.cancel(timer.notificationId);
+        }
+    }
+
+    private void stopIfIdle() {
+        if (liveTimers() == 0) {
+            stopForeground(true);
+            stopSelf();
+        }
+    }
+
+    // Keeps the single expiry alarm aimed at the earliest deadline in the heap.
+    private void rearmExpiry() {
+        if (alarmManager == null) return;
+        if (deadlines.isEmpty()) {
+            if (armedDeadline != -1) {
+                // Only an alarm armed by an earlier run can be left over; don't create the
+                // PendingIntent just to find that none is
+                PendingIntent armed = expiryIntent(PendingIntent.FLAG_NO_CREATE);
+                if (armed != null) alarmManager.cancel(armed);
+                armedDeadline = -1;
+            }
+            return;
+        }
+        long triggerAtElapsed = deadlines.peekDeadline();
+        if (triggerAtElapsed == armedDeadline) return;
+        armedDeadline = triggerAtElapsed;
+        PendingIntent expiryIntent = expiryIntent(PendingIntent.FLAG_UPDATE_CURRENT);
+
+        // Expiry is a single exact alarm on the elapsed-realtime clock, so nothing has to keep
+        // the CPU awake in between; the countdown itself is rendered by the system chronometer.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtElapsed, expiryIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtElapsed, expiryIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtElapsed, expiryIntent);
+        }
+    }
+
+    // Resolved on first use rather than in onCreate, which runs before a cold start's first
+    // startForeground.
+    private PendingIntent expiryIntent(int flags) {
+        if (expiryIntent == null) {
+            expiryIntent = PendingIntent.getBroadcast(this, 12,
+                    new Intent(this, CycleExpiryReceiver.class), flags | PendingIntent.FLAG_IMMUTABLE);
+        }
+        return expiryIntent;
+    }
+
+    private void registerScreenReceiver() {
+        screenReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean visible = isScreenVisible();
+                for (CycleTimer timer : timers) {
+                    if (timer != null && timer.ticks != null) timer.ticks.setInteractive(visible);
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        registerReceiver(screenReceiver, filter);
+    }
+
+    private boolean isScreenVisible() {
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        KeyguardManager keyguardManager = (KeyguardManager) getSystemService(KEYGUARD_SERVICE);
+        boolean screenOn = powerManager == null || powerManager.isInteractive();
+        boolean locked = keyguardManager != null && keyguardManager.isKeyguardLocked();
+        return screenOn && !locked;
+    }
+
+    // Called by CycleExpiryReceiver while the alarm's own wakelock is still held, so the CPU
+    // stays up across the hand-off to onStartCommand.
+    static synchronized void acquireExpiryWakeLock(Context context) {
+        if (expiryWakeLock == null) {
+            PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(POWER_SERVICE);
+            if (powerManager == null) return;
+            expiryWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "QuarterLog::CycleExpiry");
+            expiryWakeLock.setReferenceCounted(false);
+        }
+        if (!expiryWakeLock.isHeld()) expiryWakeLockSince = SystemClock.elapsedRealtime();
+        expiryWakeLock.acquire(EXPIRY_WAKELOCK_TIMEOUT_MS);
+        TimerMetrics.increment(TimerMetrics.WAKELOCK_ACQUIRES);
+    }
+
+    static synchronized void releaseExpiryWakeLock() {
+        if (expiryWakeLock != null && expiryWakeLock.isHeld()) {
+            expiryWakeLock.release();
+            TimerMetrics.add(TimerMetrics.WAKELOCK_HELD_MS, SystemClock.elapsedRealtime() - expiryWakeLockSince);
+        }
+    }
+    
     @Override
     public void onDestroy() {
-        stopTimer();
-        if (scheduler != null) {
-            scheduler.shutdown();
+        for (CycleTimer timer : timers) {
+            if (timer != null) timer.stopTicks();
         }
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
+        if (screenReceiver != null) {
+            unregisterReceiver(screenReceiver);
         }
+        releaseExpiryWakeLock();
         super.onDestroy();
     }
 
@@ -315,4 +564,4 @@ public class TimerForegroundService extends Service {
     public IBinder onBind(Intent intent) {
         return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Write-ahead journal of one timer's transitions. The service appends STARTED and ALERTED
+// before it carries out the transition and RESULT once the result is in PendingLogQueue, so
+// after the process is killed at any point the newest record says how far the timer got (see
+// TimerForegroundService.restore for the one gap, a result queued but not yet journaled).
+//
+// Records go round a small memory-mapped ring: an append is a few stores into the page cache,
+// with no write syscall, and survives process death. Each record is checksummed and numbered,
+// so a torn append is skipped in favour of the one before it. The ring is never forced, so a
+// power loss can leave it behind the fsynced TimerStateStore record; replay then takes the
+// store's, as it does when there is no intact record at all.
+//
+//   0 long seq   8 byte type   12 int totalCycles   16 long duration   24 long endTime
+//   32 int cyclesLeft   36 int crc32 of bytes 0..35                               x CAPACITY
+final class TimerJournal {
+    // A cycle is counting down towards endTime
+    static final byte STARTED = 1;
+    // The alert for the cycle that ended at endTime has been posted
+    static final byte ALERTED = 2;
+    // Its result was taken; cyclesLeft is still the count before it
+    static final byte RESULT = 3;
+    // The day is over or was stopped
+    static final byte STOPPED = 4;
+
+    private static final int CAPACITY = 16;
+    private static final int RECORD_BYTES = 40;
+    private static final int FILE_BYTES = CAPACITY * RECORD_BYTES;
+
+    private static final Map<String, TimerJournal> instances = new HashMap<>();
+
+    static final class Record {
+        final byte type;
+        final long duration;
+        final int totalCycles;
+        final int cyclesLeft;
+        final long endTime;
+
+        Record(byte type, long duration, int totalCycles, int cyclesLeft, long endTime) {
+            this.type = type;
+            this.duration = duration;
+            this.totalCycles = totalCycles;
+            this.cyclesLeft = cyclesLeft;
+            this.endTime = endTime;
+        }
+
+        // Whether the timer was still in the middle of its day.
+        boolean live() {
+            return type != STOPPED && cyclesLeft > 0 && endTime > 0;
+        }
+    }
+
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer mapped;
+    private long seq;
+    private Record latest;
+
+    static synchronized TimerJournal get(Context context, String timerId) {
+        TimerJournal journal = instances.get(timerId);
+        if (journal == null) {
+            journal = new TimerJournal();
+            journal.attach(fileFor(context.getFilesDir(), timerId));
+            instances.put(timerId, journal);
+        }
+        return journal;
+    }
+
+    // Where the timer stood when the process last ran: the newest journal record, or the
+    // persisted state if the journal has none or the state is further along. Every record is
+    // at or after the cycle the state was last written for, unless the journal lost pages.
+    static Record replay(Context context, String timerId) {
+        Record record = get(context, timerId).latest();
+        TimerStateStore store = TimerStateStore.get(context, timerId);
+        if (record != null && (record.endTime > store.endTime()
+                || record.endTime == store.endTime() && record.cyclesLeft <= store.cyclesLeft())) {
+            return record;
+        }
+        return new Record(STARTED, store.currentDuration(), store.totalCycles(), store.cyclesLeft(), store.endTime());
+    }
+
+    // Whether any timer was interrupted in the middle of its day, e.g. by a reboot.
+    static boolean hasLiveTimer(Context context) {
+        for (String id : TimerStateStore.timerIds(context)) {
+            if (replay(context, id).live()) return true;
+        }
+        return false;
+    }
+
+    // Named timers drop their journal along with their state when their day is over.
+    static synchronized void discard(Context context, String timerId) {
+        if (TimerStateStore.DEFAULT_TIMER.equals(timerId)) return;
+        instances.remove(timerId);
+        fileFor(context.getFilesDir(), timerId).delete();
+    }
+
+    private static File fileFor(File dir, String timerId) {
+        return new File(dir, TimerStateStore.DEFAULT_TIMER.equals(timerId) ? "timer_journal.bin" : "timer_journal_" + timerId + ".bin");
+    }
+
+    // Binds the journal to its file and finds the newest intact record.
+    synchronized void attach(File file) {
+        if (mapped != null) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            mapped.position(i * RECORD_BYTES);
+            mapped.get(scratch.array());
+            long recordSeq = scratch.getLong(0);
+            if (recordSeq <= seq || !intact()) continue;
+            seq = recordSeq;
+            latest = new Record(scratch.get(8), scratch.getLong(16), scratch.getInt(12), scratch.getInt(32), scratch.getLong(24));
+        }
+    }
+
+    synchronized void append(byte type, long duration, int totalCycles, int cyclesLeft, long endTime) {
+        latest = new Record(type, duration, totalCycles, cyclesLeft, endTime);
+        if (mapped == null) return;
+        seq++;
+        scratch.clear();
+        scratch.putLong(seq)
+                .put(type)
+                .put((byte) 0).put((byte) 0).put((byte) 0)
+                .putInt(totalCycles)
+                .putLong(duration)
+                .putLong(endTime)
+                .putInt(cyclesLeft);
+        crc.reset();
+        crc.update(scratch.array(), 0, RECORD_BYTES - 4);
+        scratch.putInt((int) crc.getValue());
+
+        mapped.position((int) (seq % CAPACITY) * RECORD_BYTES);
+        mapped.put(scratch.array());
+    }
+
+    // Newest record, or null if nothing was ever journaled.
+    synchronized Record latest() {
+        return latest;
+    }
+
+    private boolean intact() {
+        if (scratch.getLong(0) <= 0) return false;
+        crc.reset();
+        crc.update(scratch.array(), 0, RECORD_BYTES - 4);
+        return (int) crc.getValue() == scratch.getInt(RECORD_BYTES - 4);
+    }
+}
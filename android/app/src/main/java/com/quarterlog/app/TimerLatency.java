@@ -0,0 +1,78 @@
+package com.quarterlog.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+// Per-day latency histograms for timer scheduling accuracy, kept in a memory-mapped file so
+// a day's samples survive process death. One histogram per (metric, day) for the last DAYS
+// local days; a slot is recycled when its day comes round again.
+final class TimerLatency {
+    // Intended endTime of a cycle -> triggerAlertNotification actually running
+    static final int ALERT_DELAY = 0;
+    // DailyStartReceiver.onReceive -> the service's first startForeground
+    static final int DAILY_START = 1;
+    // TimerForegroundService.onCreate -> journal replayed and interrupted timers back on screen
+    static final int RESUME = 2;
+    // DONE/MISS tapped on AlertActivity -> the next cycle's countdown posted by the service
+    static final int TAP_TO_NEXT_CYCLE = 3;
+    // Tap that asked for AlertActivity -> its onCreate; stamped by AlertTapActivity
+    static final int ALERT_LAUNCH = 4;
+    // AlertActivity.onCreate -> its first frame about to be drawn
+    static final int ALERT_FIRST_DRAW = 5;
+    static final int METRICS = 8;
+
+    static final String[] NAMES = {
+            "alertDelay",
+            "dailyStart",
+            "resume",
+            "tapToNextCycle",
+            "alertLaunch",
+            "alertFirstDraw",
+    };
+
+    static final int DAYS = 7;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+
+    private static ByteBuffer buffer = ByteBuffer.allocate(METRICS * DAYS * LatencyHistogram.BYTES);
+
+    private TimerLatency() {}
+
+    static synchronized void attach(File dir) {
+        if (buffer.isDirect()) return;
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "timer_latency" + TimerProcess.fileSuffix() + ".bin"), "rw")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static int today() {
+        return localDay(System.currentTimeMillis());
+    }
+
+    static int localDay(long wallTime) {
+        return (int) Math.floorDiv(wallTime + TimeZone.getDefault().getOffset(wallTime), DAY_MS);
+    }
+
+    static synchronized void record(int metric, long valueMs) {
+        int day = today();
+        LatencyHistogram histogram = slot(metric, day);
+        if (histogram.day() != day) histogram.reset(day);
+        histogram.record(valueMs);
+    }
+
+    // Histogram for the given metric and local day, or null if nothing was recorded that day.
+    static synchronized LatencyHistogram get(int metric, int day) {
+        LatencyHistogram histogram = slot(metric, day);
+        return histogram.day() == day && histogram.count() > 0 ? histogram : null;
+    }
+
+    private static LatencyHistogram slot(int metric, int day) {
+        int index = metric * DAYS + Math.floorMod(day, DAYS);
+        return new LatencyHistogram(buffer, index * LatencyHistogram.BYTES);
+    }
+}
@@ -0,0 +1,110 @@
+package com.quarterlog.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Process-wide counters for what the native timer layer costs. Updates are a lock-free
+// AtomicLongArray increment plus a store of the new total into a memory-mapped file, so totals
+// survive process death without any write syscalls on the hot path.
+final class TimerMetrics {
+    static final int NOTIFICATION_POSTS = 0;
+    static final int TICKS = 1;
+    static final int WAKELOCK_ACQUIRES = 2;
+    static final int WAKELOCK_HELD_MS = 3;
+    static final int STORAGE_WRITES = 4;
+    static final int ALERT_FIRES = 5;
+    static final int ACTIONS_PROCESSED = 6;
+    static final int SERVICE_RESTARTS = 7;
+    static final int BROADCASTS_RECEIVED = 8;
+    static final int COUNT = 9;
+
+    // Keys used by TimerPlugin.getMetrics, indexed like the counters above
+    static final String[] NAMES = {
+            "notificationPosts",
+            "ticks",
+            "wakeLockAcquires",
+            "wakeLockHeldMs",
+            "storageWrites",
+            "alertFires",
+            "actionsProcessed",
+            "serviceRestarts",
+            "broadcastsReceived",
+    };
+
+    // [long since][long counter x COUNT]; sized with room for more counters
+    private static final int FILE_BYTES = 256;
+
+    private static final AtomicLongArray counters = new AtomicLongArray(COUNT);
+    private static volatile long since = System.currentTimeMillis();
+    private static volatile MappedByteBuffer mapped;
+
+    private TimerMetrics() {}
+
+    // Binds the counters to their file in the given directory, folding in anything counted
+    // before the first call. Safe to call from every component's entry point.
+    static synchronized void attach(File dir) {
+        if (mapped != null) return;
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "timer_metrics" + TimerProcess.fileSuffix() + ".bin"), "rw")) {
+            boolean fresh = file.length() < FILE_BYTES;
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            if (fresh) {
+                buffer.putLong(0, since);
+            } else {
+                since = buffer.getLong(0);
+                for (int i = 0; i < COUNT; i++) {
+                    counters.addAndGet(i, buffer.getLong(8 + i * 8));
+                }
+            }
+            for (int i = 0; i < COUNT; i++) {
+                buffer.putLong(8 + i * 8, counters.get(i));
+            }
+            mapped = buffer;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void increment(int counter) {
+        add(counter, 1);
+    }
+
+    static void add(int counter, long delta) {
+        long value = counters.addAndGet(counter, delta);
+        MappedByteBuffer buffer = mapped;
+        if (buffer == null) return;
+        // Two adders can store their values out of order. Whoever stores last re-checks the
+        // counter and stores again if it moved on, so the slot always ends at the latest value.
+        while (true) {
+            buffer.putLong(8 + counter * 8, value);
+            long latest = counters.get(counter);
+            if (latest == value) return;
+            value = latest;
+        }
+    }
+
+    static long get(int counter) {
+        return counters.get(counter);
+    }
+
+    static long since() {
+        return since;
+    }
+
+    static synchronized void reset() {
+        since = System.currentTimeMillis();
+        for (int i = 0; i < COUNT; i++) {
+            counters.set(i, 0);
+        }
+        MappedByteBuffer buffer = mapped;
+        if (buffer != null) {
+            buffer.putLong(0, since);
+            for (int i = 0; i < COUNT; i++) {
+                buffer.putLong(8 + i * 8, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.quarterlog.app;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.RemoteInput;
+
+// Builds the ongoing countdown and "Cycle Complete" notifications of one timer. Intents, the
+// icon and both builders are resolved once per timer; updates only swap the content text.
+// Each timer posts under its own notification id, and its DONE/MISS intents carry its id.
+// The alert builder and its intents are only resolved when the first alert is shown, so a
+// timer started from a cold process posts its countdown without paying for them.
+// Builders are shared by the main thread and the fallback ticks on TimerScheduler, so every
+// method that touches them holds this object's lock.
+class TimerNotifications {
+    // Countdown chronometers (setChronometerCountDown) are only rendered from API 24.
+    static final boolean USES_CHRONOMETER = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+
+    // Channels outlive the process: a new process only looks them up, later starts skip even that
+    private static boolean channelsCreated;
+
+    private final Context context;
+    private final String timerId;
+    private final int slot;
+    private final String label;
+    private final int iconResId = R.drawable.ic_stat_status_bar_logo;
+    private final NotificationManager manager;
+    private final int notificationId;
+    private final NotificationCompat.Builder countdownBuilder;
+    private NotificationCompat.Builder alertBuilder;
+    private final CountdownText countdownText = new CountdownText();
+    // Whether the countdown is what this timer shows; a tick that ran late must not post over
+    // the alert or a cancelled notification
+    private boolean counting;
+
+    TimerNotifications(Context context, String timerId, int slot, int notificationId) {
+        this.context = context;
+        this.timerId = timerId;
+        this.slot = slot;
+        manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.notificationId = notificationId;
+        // The default timer keeps its untitled look; other timers are labelled with their id
+        label = TimerStateStore.DEFAULT_TIMER.equals(timerId) ? null : timerId;
+
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context,
+                0, notificationIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        // Title left blank per user request
+        countdownBuilder = new NotificationCompat.Builder(context, TimerForegroundService.CHANNEL_ID)
+                .setContentTitle(label == null ? "" : label)
+                .setSmallIcon(iconResId)
+                .setContentIntent(pendingIntent)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setLocalOnly(true)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            countdownBuilder.setForegroundServiceBehavior(Notification.FOREGROUND_SERVICE_IMMEDIATE);
+        }
+        if (USES_CHRONOMETER) {
+            countdownBuilder.setShowWhen(true)
+                    .setUsesChronometer(true)
+                    .setChronometerCountDown(true);
+        }
+    }
+
+    private NotificationCompat.Builder alertBuilder() {
+        if (alertBuilder != null) return alertBuilder;
+        // Tapping the alert opens the DONE/MISS screen, through AlertTapActivity so the launch
+        // is timed from the tap
+        Intent alertIntent = new Intent(context, AlertTapActivity.class);
+        alertIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        alertIntent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        PendingIntent alertPendingIntent = PendingIntent.getActivity(context,
+                30 + slot, alertIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        // Add RemoteInput for text entry
+        RemoteInput remoteInput = new RemoteInput.Builder("log_input")
+                .setLabel("What did you do?")
+                .build();
+
+        Intent winIntent = new Intent(context, TimerForegroundService.class);
+        winIntent.setAction("ACTION_WIN");
+        winIntent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        // Extras don't make PendingIntents distinct, so every timer slot needs its own request codes
+        PendingIntent winPendingIntent = PendingIntent.getService(context, 10 + 2 * slot, winIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+
+        NotificationCompat.Action winAction = new NotificationCompat.Action.Builder(
+                0, "DONE", winPendingIntent)
+                .addRemoteInput(remoteInput)
+                .build();
+
+        Intent lossIntent = new Intent(context, TimerForegroundService.class);
+        lossIntent.setAction("ACTION_LOSS");
+        lossIntent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        PendingIntent lossPendingIntent = PendingIntent.getService(context, 11 + 2 * slot, lossIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+
+        NotificationCompat.Action lossAction = new NotificationCompat.Action.Builder(
+                0, "MISS", lossPendingIntent)
+                .addRemoteInput(remoteInput)
+                .build();
+
+        alertBuilder = new NotificationCompat.Builder(context, TimerForegroundService.ALERT_CHANNEL_ID)
+                .setContentTitle(label == null ? "Cycle Complete" : label + " · Cycle Complete")
+                .setSmallIcon(iconResId)
+                .setContentIntent(alertPendingIntent)
+                .setAutoCancel(false) // Don't dismiss on click
+                .setOngoing(true)     // Persistent
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .addAction(winAction)
+                .addAction(lossAction)
+                .setSound(null)
+                .setVibrate(new long[]{0L});
+        return alertBuilder;
+    }
+
+    // Full countdown notification, built once at the start of each cycle, e.g.
+    // "Cycle 7/32 · 5 streak". Streaks are only mentioned from two wins in a row.
+    synchronized Notification countdown(long endTime, int current, int total, int streak) {
+        counting = true;
+        if (USES_CHRONOMETER) {
+            String text = total > 0 ? "Cycle " + current + "/" + total : "";
+            if (streak >= 2) {
+                text = text.isEmpty() ? streak + " streak" : text + " · " + streak + " streak";
+            }
+            countdownBuilder.setWhen(endTime)
+                    .setContentText(text);
+        } else {
+            countdownText.reset();
+            countdownText.set(endTime - System.currentTimeMillis());
+            countdownBuilder.setContentText(countdownText.toString());
+        }
+        return countdownBuilder.build();
+    }
+
+    // Fallback tick for devices without countdown chronometers. Skips notify() when the
+    // visible text is unchanged or the countdown was stopped; returns true if a notification
+    // was posted.
+    synchronized boolean updateCountdown(long millisLeft) {
+        if (!counting || !countdownText.set(millisLeft) || manager == null) return false;
+        countdownBuilder.setContentText(countdownText.toString());
+        manager.notify(notificationId, countdownBuilder.build());
+        return true;
+    }
+
+    // Ticks that are already running finish before this returns and post nothing after it.
+    synchronized void stopCountdown() {
+        counting = false;
+    }
+
+    synchronized Notification alert(int current, int total) {
+        counting = false;
+        return alertBuilder()
+                .setContentText("Declare your status for Cycle " + current + "/" + total)
+                .build();
+    }
+
+    static synchronized void createChannels(Context context) {
+        if (channelsCreated || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager == null) return;
+        if (manager.getNotificationChannel(TimerForegroundService.CHANNEL_ID) == null) {
+            NotificationChannel serviceChannel = new NotificationChannel(
+                    TimerForegroundService.CHANNEL_ID,
+                    "Live Timer Status",
+                    NotificationManager.IMPORTANCE_DEFAULT
+            );
+            serviceChannel.setDescription("Shows the active cycle countdown");
+            serviceChannel.setSound(null, null);
+            serviceChannel.enableVibration(false);
+            serviceChannel.setShowBadge(false);
+            serviceChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
+            manager.createNotificationChannel(serviceChannel);
+        }
+        if (manager.getNotificationChannel(TimerForegroundService.ALERT_CHANNEL_ID) == null) {
+            NotificationChannel alertChannel = new NotificationChannel(
+                    TimerForegroundService.ALERT_CHANNEL_ID,
+                    "Cycle Complete Alert",
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            alertChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
+            manager.createNotificationChannel(alertChannel);
+        }
+        channelsCreated = true;
+    }
+}
@@ -5,151 +5,392 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import java.io.File;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
-import android.content.Context;
-
-import android.app.AlarmManager;
-import android.app.PendingIntent;
-import java.util.Calendar;
 
 @CapacitorPlugin(name = "TimerPlugin")
 public class TimerPlugin extends Plugin {
+    private static final int DEFAULT_DRAIN_BATCH = 256;
+    private static final int MAX_DRAIN_BATCH = 1024;
+    private static final int DEFAULT_HISTORY_PAGE = 200;
+    private static final int MAX_HISTORY_PAGE = 1000;
+
+    // Every method parses its arguments on the bridge thread and does the rest on
+    // TimerScheduler, inside a TimerTrace section named after the method. Timer state,
+    // schedules, the log and metrics all belong to TimerProvider, which runs in the timer
+    // process when that is separate from this one.
+
+    // Forwards every TimerEvents event to plugin listeners: cycleStart { id, cycle, totalCycles,
+    // endTime }, cycleComplete { id, cycle, totalCycles }, logResult { id, cycle, type, input }
+    // and timerStop { id, totalCycles }, each with a timestamp. Events are retained until the
+    // web layer adds a listener, so none are lost while it loads.
+    private final TimerEvents.Listener events = event -> {
+        JSObject data = new JSObject();
+        data.put("id", event.timer);
+        data.put("timestamp", event.time);
+        switch (event.type) {
+            case TimerEvents.CYCLE_STARTED:
+                data.put("cycle", event.cycle);
+                data.put("totalCycles", event.totalCycles);
+                data.put("endTime", event.endTime);
+                break;
+            case TimerEvents.CYCLE_COMPLETE:
+                data.put("cycle", event.cycle);
+                data.put("totalCycles", event.totalCycles);
+                break;
+            case TimerEvents.RESULT:
+                data.put("cycle", event.cycle);
+                data.put("type", PendingLogQueue.outcomeName(event.outcome));
+                data.put("input", event.text == null ? "" : event.text);
+                break;
+            default:
+                data.put("totalCycles", event.totalCycles);
+        }
+        notifyListeners(TimerEvents.NAMES[event.type], data, true);
+    };
+
+    @Override
+    public void load() {
+        TimerEvents.subscribe(getContext(), events);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        TimerEvents.unsubscribe(events);
+    }
 
     @PluginMethod
     public void start(PluginCall call) {
-        // ... existing start code ...
-        long duration = call.getInt("duration", 0); 
-        int totalCycles = call.getInt("totalCycles", 0);
-        int cyclesLeft = call.getInt("cyclesLeft", 0);
-        
-        Intent serviceIntent = new Intent(getContext(), TimerForegroundService.class);
-        serviceIntent.putExtra("duration", duration);
-        serviceIntent.putExtra("totalCycles", totalCycles);
-        serviceIntent.putExtra("cyclesLeft", cyclesLeft);
-        
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            getContext().startForegroundService(serviceIntent);
-        } else {
-            getContext().startService(serviceIntent);
-        }
-        call.resolve();
+        startTimerService(call, TimerStateStore.DEFAULT_TIMER);
     }
 
+    // Starts or restarts a named timer that runs alongside the default one:
+    // { id, duration, totalCycles, cyclesLeft }. Each timer gets its own notification.
     @PluginMethod
-    public void scheduleDailyStart(PluginCall call) {
-        int hour = call.getInt("hour", 9);
-        int minute = call.getInt("minute", 0);
-        long duration = call.getInt("duration", 15 * 60 * 1000);
-        int totalCycles = call.getInt("totalCycles", 32);
-
-        // Persist schedule for boot restoration
-        getContext().getSharedPreferences("DailySchedule", Context.MODE_PRIVATE).edit()
-            .putInt("hour", hour)
-            .putInt("minute", minute)
-            .putLong("duration", duration)
-            .putInt("totalCycles", totalCycles)
-            .putBoolean("enabled", true)
-            .apply();
-
-        AlarmManager alarmManager = (AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) {
-            call.reject("AlarmManager not available");
+    public void startTimer(PluginCall call) {
+        String id = call.getString("id");
+        if (!isValidTimerId(id)) {
+            call.reject("id must be 1-32 letters, digits, '-' or '_'");
             return;
         }
+        startTimerService(call, id);
+    }
 
-        Intent intent = new Intent(getContext(), DailyStartReceiver.class);
-        intent.putExtra("duration", duration);
-        intent.putExtra("totalCycles", totalCycles);
-        intent.putExtra("cyclesLeft", totalCycles); // Start fresh
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            getContext(), 
-            1001, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, hour);
-        calendar.set(Calendar.MINUTE, minute);
-        calendar.set(Calendar.SECOND, 0);
-
-        if (calendar.getTimeInMillis() <= System.currentTimeMillis()) {
-            calendar.add(Calendar.DAY_OF_YEAR, 1);
+    @PluginMethod
+    public void stopTimer(PluginCall call) {
+        String id = call.getString("id");
+        if (!isValidTimerId(id)) {
+            call.reject("id must be 1-32 letters, digits, '-' or '_'");
+            return;
         }
+        stopTimerService(call, id);
+    }
 
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-            if (alarmManager.canScheduleExactAlarms()) {
-                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
-            } else {
-                // Fallback or request permission (omitted for brevity, assuming permission granted)
-                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
-            }
-        } else {
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(), pendingIntent);
-        }
+    // Every timer with cycles left, from the state each one persists on every transition.
+    @PluginMethod
+    public void listTimers(PluginCall call) {
+        callProvider(call, TimerProvider.LIST_TIMERS, null, null);
+    }
 
-        call.resolve();
+    private static boolean isValidTimerId(String id) {
+        return id != null && id.matches("[A-Za-z0-9_-]{1,32}");
+    }
+
+    // The timer process claims the slot and starts the service in one provider call, so the
+    // call is rejected if the timer can't get a slot.
+    private void startTimerService(PluginCall call, String timerId) {
+        Bundle extras = new Bundle();
+        extras.putLong("duration", call.getInt("duration", 0));
+        extras.putInt("totalCycles", call.getInt("totalCycles", 0));
+        extras.putInt("cyclesLeft", call.getInt("cyclesLeft", 0));
+        callProvider(call, TimerProvider.START_TIMER, timerId, extras);
+    }
+
+    @PluginMethod
+    public void scheduleDailyStart(PluginCall call) {
+        // Kept as the every-day schedule alongside any set through setSchedules
+        Bundle extras = new Bundle();
+        extras.putInt("hour", call.getInt("hour", 9));
+        extras.putInt("minute", call.getInt("minute", 0));
+        extras.putLong("duration", call.getInt("duration", 15 * 60 * 1000));
+        extras.putInt("totalCycles", call.getInt("totalCycles", 32));
+        callProvider(call, TimerProvider.PUT_DAILY, null, extras);
     }
 
     @PluginMethod
     public void cancelDailyStart(PluginCall call) {
-        // Disable schedule persistence
-        getContext().getSharedPreferences("DailySchedule", Context.MODE_PRIVATE).edit()
-            .putBoolean("enabled", false)
-            .apply();
-
-        AlarmManager alarmManager = (AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(getContext(), DailyStartReceiver.class);
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            getContext(), 
-            1001, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        if (alarmManager != null) {
-            alarmManager.cancel(pendingIntent);
-        }
-        call.resolve();
+        callProvider(call, TimerProvider.REMOVE_DAILY, null, null);
+    }
+
+    // Replaces all weekly schedules. Each entry mirrors the web ScheduleConfig:
+    // { id, enabled, startTime: "HH:mm", endTime: "HH:mm", daysOfWeek: [0 = Sunday .. 6], duration, totalCycles }
+    // Resolves with the nextFireTime of the one alarm armed for all of them.
+    @PluginMethod
+    public void setSchedules(PluginCall call) {
+        JSArray array = call.getArray("schedules", new JSArray());
+        callProvider(call, TimerProvider.SET_SCHEDULES, array.toString(), null);
+    }
+
+    @PluginMethod
+    public void getSchedules(PluginCall call) {
+        callProvider(call, TimerProvider.GET_SCHEDULES, null, null);
     }
 
     @PluginMethod
     public void stop(PluginCall call) {
+        stopTimerService(call, TimerStateStore.DEFAULT_TIMER);
+    }
+
+    private void stopTimerService(PluginCall call, String timerId) {
         Intent serviceIntent = new Intent(getContext(), TimerForegroundService.class);
         serviceIntent.setAction("STOP");
-        getContext().startService(serviceIntent);
-        call.resolve();
+        serviceIntent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        execute(call, () -> {
+            try {
+                getContext().startService(serviceIntent);
+                call.resolve();
+            } catch (Exception e) {
+                call.reject("Unable to stop timer", e);
+            }
+        });
     }
 
+    // Hands over every queued result (input/type carry the latest) and acknowledges them.
     @PluginMethod
     public void checkPendingLog(PluginCall call) {
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences("NativeLog", Context.MODE_PRIVATE);
-        String input = prefs.getString("pending_input", null);
-        String type = prefs.getString("pending_type", null);
-        
-        if (input != null && type != null) {
-            JSObject ret = new JSObject();
-            ret.put("input", input);
-            ret.put("type", type);
-            
-            // Retrieve timer state sync info
-            android.content.SharedPreferences timerPrefs = getContext().getSharedPreferences("TimerState", Context.MODE_PRIVATE);
-            long endTime = timerPrefs.getLong("endTime", 0);
-            int cyclesLeft = timerPrefs.getInt("cyclesLeft", 0);
-            
-            if (endTime > System.currentTimeMillis()) {
-                ret.put("activeEndTime", endTime);
-                ret.put("cyclesLeft", cyclesLeft);
+        callProvider(call, TimerProvider.CHECK_PENDING_LOG, null, null);
+    }
+
+    // Returns every queued log entry from the given cursor (up to max) in one round trip.
+    // Entries stay queued until ackLog is called with the returned cursor.
+    @PluginMethod
+    public void drainLog(PluginCall call) {
+        Long from = call.getLong("cursor", null);
+        Bundle extras = new Bundle();
+        if (from != null) extras.putLong("cursor", from);
+        extras.putInt("max", Math.max(1, Math.min(call.getInt("max", DEFAULT_DRAIN_BATCH), MAX_DRAIN_BATCH)));
+        callProvider(call, TimerProvider.DRAIN_LOG, null, extras);
+    }
+
+    @PluginMethod
+    public void ackLog(PluginCall call) {
+        Long cursor = call.getLong("cursor", null);
+        if (cursor == null) {
+            call.reject("cursor is required");
+            return;
+        }
+        Bundle extras = new Bundle();
+        extras.putLong("cursor", cursor);
+        callProvider(call, TimerProvider.ACK_LOG, null, extras);
+    }
+
+    // Win streak, today's counts and rolling hit rate of one timer (the default unless id is
+    // given), read straight from its outcome ring.
+    @PluginMethod
+    public void getCycleStats(PluginCall call) {
+        String id = call.getString("id", TimerStateStore.DEFAULT_TIMER);
+        if (!isValidTimerId(id)) {
+            call.reject("id must be 1-32 letters, digits, '-' or '_'");
+            return;
+        }
+        callProvider(call, TimerProvider.CYCLE_STATS, id, null);
+    }
+
+    // One page of recorded results, oldest first: { from?, to? (wall-clock ms, rounded to whole
+    // local days), outcome?: "WIN" | "LOSS", id?, cursor?, limit? }. Pass the returned cursor
+    // back for the next page; hasMore is false once the range is exhausted.
+    @PluginMethod
+    public void getHistory(PluginCall call) {
+        Uri.Builder uri = CycleHistoryProvider.uri(getContext()).buildUpon();
+        Long from = call.getLong("from", null);
+        if (from != null) uri.appendQueryParameter("fromDay", String.valueOf(TimerLatency.localDay(from)));
+        Long to = call.getLong("to", null);
+        if (to != null) uri.appendQueryParameter("toDay", String.valueOf(TimerLatency.localDay(to)));
+        String outcome = call.getString("outcome");
+        if (outcome != null) {
+            if (!"WIN".equals(outcome) && !"LOSS".equals(outcome)) {
+                call.reject("outcome must be WIN or LOSS");
+                return;
             }
-            
-            // Clear pending log
-            prefs.edit().clear().apply();
-            
-            call.resolve(ret);
-        } else {
-            call.resolve();
+            uri.appendQueryParameter("outcome", outcome);
         }
+        String id = call.getString("id");
+        if (id != null) {
+            if (!isValidTimerId(id)) {
+                call.reject("id must be 1-32 letters, digits, '-' or '_'");
+                return;
+            }
+            uri.appendQueryParameter("timer", id);
+        }
+        Integer cursor = call.getInt("cursor", null);
+        if (cursor != null) uri.appendQueryParameter("after", String.valueOf(Math.max(0, cursor)));
+        int limit = Math.max(1, Math.min(call.getInt("limit", DEFAULT_HISTORY_PAGE), MAX_HISTORY_PAGE));
+        uri.appendQueryParameter("limit", String.valueOf(limit));
+
+        execute(call, () -> {
+            try (Cursor rows = getContext().getContentResolver().query(uri.build(), null, null, null, null)) {
+                if (rows == null) {
+                    call.reject("History unavailable");
+                    return;
+                }
+                JSArray entries = new JSArray();
+                while (rows.moveToNext()) {
+                    JSObject item = new JSObject();
+                    item.put("timestamp", rows.getLong(CycleHistoryProvider.COLUMN_TIMESTAMP));
+                    item.put("cycle", rows.getInt(CycleHistoryProvider.COLUMN_CYCLE));
+                    item.put("id", rows.getString(CycleHistoryProvider.COLUMN_TIMER));
+                    item.put("type", rows.getString(CycleHistoryProvider.COLUMN_TYPE));
+                    item.put("input", rows.getString(CycleHistoryProvider.COLUMN_INPUT));
+                    entries.put(item);
+                }
+                Bundle extras = rows.getExtras();
+                JSObject ret = new JSObject();
+                ret.put("entries", entries);
+                ret.put("cursor", extras.getInt(CycleHistoryProvider.EXTRA_NEXT));
+                ret.put("hasMore", extras.getBoolean(CycleHistoryProvider.EXTRA_HAS_MORE));
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("History unavailable", e);
+            }
+        });
+    }
+
+    // Win/loss totals over { from?, to? } (wall-clock ms, rounded to whole local days; all
+    // days by default): overall, per hour of day (hourWins/hourLosses, 24 each) and per day
+    // (days: [{ day, wins, losses }], day counted in local days since the epoch). Answered
+    // from the native rollup, so the cost is per day in the range, not per result.
+    @PluginMethod
+    public void getRollup(PluginCall call) {
+        Bundle extras = new Bundle();
+        Long from = call.getLong("from", null);
+        if (from != null) extras.putInt("fromDay", TimerLatency.localDay(from));
+        Long to = call.getLong("to", null);
+        if (to != null) extras.putInt("toDay", TimerLatency.localDay(to));
+        callProvider(call, TimerProvider.ROLLUP, null, extras);
+    }
+
+    // Counters of the process the timer runs in
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        callProvider(call, TimerProvider.METRICS, null, null);
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        callProvider(call, TimerProvider.RESET_METRICS, null, null);
+    }
+
+    // p50/p99/max of each latency histogram for one local day (today unless daysAgo is given)
+    @PluginMethod
+    public void getLatencyStats(PluginCall call) {
+        Bundle extras = new Bundle();
+        extras.putInt("daysAgo", Math.max(0, Math.min(call.getInt("daysAgo", 0), TimerLatency.DAYS - 1)));
+        callProvider(call, TimerProvider.LATENCY_STATS, null, extras);
+    }
+
+    // PSS of the timer process and of this (WebView) process, in kB. With the timerProcess
+    // build option off both are the same process and separateProcess is false.
+    @PluginMethod
+    public void getProcessMemory(PluginCall call) {
+        execute(call, () -> {
+            try {
+                Bundle reply = TimerProvider.call(getContext(), TimerProvider.MEMORY, null, null);
+                JSObject timer = reply == null ? null : resultOf(reply);
+                if (timer == null) {
+                    call.reject("Timer process unavailable");
+                    return;
+                }
+                JSObject ui = new JSObject(TimerProvider.memory().toString());
+                JSObject ret = new JSObject();
+                ret.put("timer", timer);
+                ret.put("ui", ui);
+                ret.put("separateProcess", timer.getInt("pid") != ui.getInt("pid"));
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("Unable to measure memory", e);
+            }
+        });
+    }
+
+    // Writes the trace ring of the timer process, and of this process when the timer runs in
+    // its own, to the cache dir (shareable through the FileProvider). Resolves with the path
+    // and event count of each file.
+    @PluginMethod
+    public void dumpTrace(PluginCall call) {
+        execute(call, () -> {
+            try {
+                Bundle reply = TimerProvider.call(getContext(), TimerProvider.DUMP_TRACE, null, null);
+                String error = reply == null ? "Timer process unavailable" : reply.getString(TimerProvider.ERROR);
+                if (error != null) {
+                    call.reject(error);
+                    return;
+                }
+                JSObject timer = resultOf(reply);
+                JSObject ret = new JSObject();
+                ret.put("timer", timer);
+                File file = TimerTrace.file(getContext().getCacheDir());
+                if (!file.getPath().equals(timer.getString("path"))) {
+                    ret.put("ui", new JSObject(TimerProvider.dumpTrace(getContext()).toString()));
+                }
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("Unable to write trace", e);
+            }
+        });
+    }
+
+    // Runs a method's work on the scheduler, traced under the method's name.
+    private static void execute(PluginCall call, Runnable work) {
+        String method = call.getMethodName();
+        TimerScheduler.execute(() -> {
+            TimerTrace.beginCall(TimerTrace.PLUGIN_CALL, method);
+            try {
+                work.run();
+            } finally {
+                TimerTrace.endCall(TimerTrace.PLUGIN_CALL, method);
+            }
+        });
+    }
+
+    // Runs a TimerProvider method from the scheduler and resolves the call with its result.
+    private void callProvider(PluginCall call, String method, String arg, Bundle extras) {
+        execute(call, () -> {
+            Bundle reply;
+            try {
+                reply = TimerProvider.call(getContext(), method, arg, extras);
+            } catch (Exception e) {
+                call.reject("Timer process unavailable", e);
+                return;
+            }
+            if (reply == null) {
+                call.reject("Timer process unavailable");
+                return;
+            }
+            String error = reply.getString(TimerProvider.ERROR);
+            if (error != null) {
+                call.reject(error);
+                return;
+            }
+            try {
+                JSObject result = resultOf(reply);
+                if (result != null) {
+                    call.resolve(result);
+                } else {
+                    call.resolve();
+                }
+            } catch (org.json.JSONException e) {
+                call.reject("Malformed timer reply", e);
+            }
+        });
+    }
+
+    private static JSObject resultOf(Bundle reply) throws org.json.JSONException {
+        String json = reply.getString(TimerProvider.RESULT);
+        return json == null ? null : new JSObject(json);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package com.quarterlog.app;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Which process this code is running in. Built with -PtimerProcess=true, the service, its
+// receivers, AlertActivity and TimerProvider run in "<package>:timer" while MainActivity and the
+// WebView stay in the main process. Each process keeps its own memory-mapped metrics and latency
+// files: two processes mapping the same counters would overwrite each other's totals.
+final class TimerProcess {
+    private static String name;
+
+    private TimerProcess() {}
+
+    static synchronized String name() {
+        if (name == null) {
+            name = readName();
+        }
+        return name;
+    }
+
+    // "" in the main process, "_timer" in "<package>:timer"; appended to per-process file names.
+    static String fileSuffix() {
+        String process = name();
+        int colon = process.indexOf(':');
+        return colon < 0 ? "" : "_" + process.substring(colon + 1);
+    }
+
+    // Application.getProcessName() needs API 28, so read it the way the platform does
+    private static String readName() {
+        byte[] buffer = new byte[256];
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            int length = in.read(buffer);
+            int end = 0;
+            while (end < length && buffer[end] != 0) end++;
+            return new String(buffer, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
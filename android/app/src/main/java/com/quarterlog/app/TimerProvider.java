@@ -0,0 +1,475 @@
+package com.quarterlog.app;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Process;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Timer state, schedules, the result log and metrics, behind ContentProvider.call(). It lives
+// in the same process as TimerForegroundService, so with the timerProcess build option the UI
+// process reaches all of it over one Binder call and the caches in TimerStateStore,
+// ScheduleEngine, PendingLogQueue and CycleOutcomeRing are only ever used by the timer process.
+// Without the option the call stays in-process.
+//
+// Methods run on the calling thread: a binder thread for calls from the UI process, the
+// plugin's TimerScheduler task otherwise. Handing them to the timer process's scheduler would
+// park a binder thread behind countdown ticks and receiver work; the stores synchronize on
+// their own. Results come back as JSON under RESULT (absent when there is nothing to return),
+// failures as a message under ERROR.
+public class TimerProvider extends ContentProvider {
+    static final String RESULT = "result";
+    static final String ERROR = "error";
+
+    static final String LIST_TIMERS = "listTimers";
+    static final String START_TIMER = "startTimer";
+    static final String PUT_DAILY = "putDaily";
+    static final String REMOVE_DAILY = "removeDaily";
+    static final String SET_SCHEDULES = "setSchedules";
+    static final String GET_SCHEDULES = "getSchedules";
+    static final String CHECK_PENDING_LOG = "checkPendingLog";
+    static final String DRAIN_LOG = "drainLog";
+    static final String ACK_LOG = "ackLog";
+    static final String RECORD = "record";
+    static final String CYCLE_STATS = "cycleStats";
+    static final String METRICS = "metrics";
+    static final String RESET_METRICS = "resetMetrics";
+    static final String LATENCY_STATS = "latencyStats";
+    static final String MEMORY = "memory";
+    static final String DUMP_TRACE = "dumpTrace";
+    static final String ROLLUP = "rollup";
+
+    static Uri uri(Context context) {
+        return Uri.parse("content://" + context.getPackageName() + ".timer");
+    }
+
+    // Calls a method from any process and returns the provider's reply.
+    static Bundle call(Context context, String method, String arg, Bundle extras) {
+        return context.getContentResolver().call(uri(context), method, arg, extras);
+    }
+
+    @Override
+    public boolean onCreate() {
+        // Providers are created before Application.onCreate; keep the timer process start cheap
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        Context context = getContext();
+        Bundle reply = new Bundle();
+        TimerTrace.beginCall(TimerTrace.PROVIDER_CALL, method);
+        try {
+            TimerMetrics.attach(context.getFilesDir());
+            TimerLatency.attach(context.getFilesDir());
+            JSONObject result = dispatch(context, method, arg, extras == null ? Bundle.EMPTY : extras);
+            if (result != null) reply.putString(RESULT, result.toString());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            reply.putString(ERROR, e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            reply.putString(ERROR, "Pending log unavailable");
+        } catch (Exception e) {
+            e.printStackTrace();
+            reply.putString(ERROR, "Timer call failed: " + method);
+        } finally {
+            TimerTrace.endCall(TimerTrace.PROVIDER_CALL, method);
+        }
+        return reply;
+    }
+
+    private static JSONObject dispatch(Context context, String method, String arg, Bundle extras) throws IOException, JSONException {
+        switch (method) {
+            case LIST_TIMERS:
+                return listTimers(context);
+            case START_TIMER:
+                startTimer(context, arg, extras);
+                return null;
+            case PUT_DAILY:
+                ScheduleEngine.get(context).put(new ScheduleEngine.Schedule(
+                        ScheduleEngine.DAILY_ID, ScheduleEngine.ALL_DAYS,
+                        extras.getInt("hour", 9) * 60 + extras.getInt("minute", 0), -1,
+                        extras.getLong("duration", TimerStateStore.DEFAULT_DURATION),
+                        extras.getInt("totalCycles", ScheduleEngine.DEFAULT_CYCLES)));
+                ScheduleAlarm.rearm(context, System.currentTimeMillis());
+                return null;
+            case REMOVE_DAILY:
+                ScheduleEngine.get(context).remove(ScheduleEngine.DAILY_ID);
+                ScheduleAlarm.rearm(context, System.currentTimeMillis());
+                return null;
+            case SET_SCHEDULES:
+                ScheduleEngine.get(context).setAll(parseSchedules(arg));
+                return new JSONObject().put("nextFireTime", ScheduleAlarm.rearm(context, System.currentTimeMillis()));
+            case GET_SCHEDULES:
+                return readSchedules(context);
+            case CHECK_PENDING_LOG:
+                return readPendingLog(context);
+            case DRAIN_LOG:
+                return drainLog(context, extras.containsKey("cursor") ? extras.getLong("cursor") : null, extras.getInt("max", 1));
+            case ACK_LOG:
+                PendingLogQueue.get(context).ack(extras.getLong("cursor"));
+                return null;
+            case RECORD:
+                TimerMetrics.increment(TimerMetrics.ACTIONS_PROCESSED);
+                PendingLogQueue.record(context, extras.getString("action"), extras.getString("text", ""));
+                return null;
+            case CYCLE_STATS:
+                return cycleStats(context, arg);
+            case METRICS:
+                return metrics();
+            case RESET_METRICS:
+                TimerMetrics.reset();
+                return null;
+            case LATENCY_STATS:
+                return latencyStats(extras.getInt("daysAgo", 0));
+            case MEMORY:
+                return memory();
+            case DUMP_TRACE:
+                return dumpTrace(context);
+            case ROLLUP:
+                return rollup(context, extras.getInt("fromDay", Integer.MIN_VALUE), extras.getInt("toDay", Integer.MAX_VALUE));
+            default:
+                throw new IllegalArgumentException("Unknown timer call: " + method);
+        }
+    }
+
+    // Every timer with cycles left, from its journal: the state file is not rewritten when a
+    // day ends, so only the journal knows the default timer has finished.
+    private static JSONObject listTimers(Context context) throws JSONException {
+        long now = System.currentTimeMillis();
+        JSONArray timers = new JSONArray();
+        for (String id : TimerStateStore.timerIds(context)) {
+            TimerJournal.Record record = TimerJournal.replay(context, id);
+            if (!record.live()) continue;
+            JSONObject item = new JSONObject();
+            item.put("id", id);
+            item.put("duration", record.duration);
+            item.put("totalCycles", record.totalCycles);
+            item.put("cyclesLeft", record.cyclesLeft);
+            item.put("cycle", Math.max(1, record.totalCycles - record.cyclesLeft + 1));
+            item.put("endTime", record.endTime);
+            item.put("awaitingResult", record.endTime <= now);
+            timers.put(item);
+        }
+        return new JSONObject().put("timers", timers);
+    }
+
+    // Claims the timer's slot and starts it, in the process that owns the slots; the
+    // service holds the default timer plus MAX_TIMERS - 1 named ones.
+    private static void startTimer(Context context, String timerId, Bundle extras) {
+        if (!TimerSlots.claim(context, timerId)) {
+            throw new IllegalArgumentException("Too many timers running");
+        }
+        Intent serviceIntent = new Intent(context, TimerForegroundService.class);
+        serviceIntent.putExtra("duration", extras.getLong("duration", 0));
+        serviceIntent.putExtra("totalCycles", extras.getInt("totalCycles", 0));
+        serviceIntent.putExtra("cyclesLeft", extras.getInt("cyclesLeft", 0));
+        serviceIntent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(serviceIntent);
+            } else {
+                context.startService(serviceIntent);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            TimerSlots.release(timerId);
+            throw new IllegalStateException("Unable to start timer");
+        }
+    }
+
+    // Parses the web ScheduleConfig list:
+    // [{ id, enabled, startTime: "HH:mm", endTime: "HH:mm", daysOfWeek: [0 = Sunday .. 6], duration, totalCycles }]
+    // totalCycles defaults to however many cycles fit between startTime and endTime.
+    private static List<ScheduleEngine.Schedule> parseSchedules(String json) throws JSONException {
+        JSONArray array = new JSONArray(json == null ? "[]" : json);
+        List<ScheduleEngine.Schedule> schedules = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            if (!item.optBoolean("enabled", true)) continue;
+
+            int startMinute = parseMinute(item.optString("startTime", ""));
+            if (startMinute < 0) {
+                throw new IllegalArgumentException("Invalid startTime at index " + i);
+            }
+            int endMinute = item.has("endTime") ? parseMinute(item.optString("endTime", "")) : -1;
+            int days = 0;
+            JSONArray daysOfWeek = item.optJSONArray("daysOfWeek");
+            if (daysOfWeek == null) {
+                days = ScheduleEngine.ALL_DAYS;
+            } else {
+                for (int d = 0; d < daysOfWeek.length(); d++) {
+                    int day = daysOfWeek.getInt(d);
+                    if (day >= 0 && day < 7) days |= 1 << day;
+                }
+            }
+            schedules.add(new ScheduleEngine.Schedule(
+                item.optString("id", String.valueOf(i)),
+                days,
+                startMinute,
+                endMinute,
+                item.optLong("duration", TimerStateStore.DEFAULT_DURATION),
+                item.optInt("totalCycles", 0)));
+        }
+        return schedules;
+    }
+
+    private static JSONObject readSchedules(Context context) throws JSONException {
+        ScheduleEngine engine = ScheduleEngine.get(context);
+        JSONArray schedules = new JSONArray();
+        for (ScheduleEngine.Schedule schedule : engine.schedules()) {
+            JSONObject item = new JSONObject();
+            item.put("id", schedule.id);
+            item.put("startTime", formatMinute(schedule.startMinute));
+            if (schedule.endMinute >= 0) {
+                item.put("endTime", formatMinute(schedule.endMinute));
+            }
+            JSONArray days = new JSONArray();
+            for (int day = 0; day < 7; day++) {
+                if ((schedule.days & (1 << day)) != 0) days.put(day);
+            }
+            item.put("daysOfWeek", days);
+            item.put("duration", schedule.duration);
+            item.put("totalCycles", schedule.totalCycles);
+            schedules.put(item);
+        }
+
+        JSONObject ret = new JSONObject();
+        ret.put("schedules", schedules);
+        long now = System.currentTimeMillis();
+        int event = engine.nextEvent(now);
+        if (event >= 0) {
+            ret.put("nextFireTime", engine.fireTime(event, now));
+            ret.put("nextScheduleId", engine.scheduleFor(event).id);
+        }
+        return ret;
+    }
+
+    // "HH:mm" -> minute of day, or -1 if malformed
+    private static int parseMinute(String time) {
+        int colon = time.indexOf(':');
+        if (colon < 0) return -1;
+        try {
+            int hour = Integer.parseInt(time.substring(0, colon).trim());
+            int minute = Integer.parseInt(time.substring(colon + 1).trim());
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59) return -1;
+            return hour * 60 + minute;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String formatMinute(int minuteOfDay) {
+        return String.format(Locale.US, "%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    private static JSONObject readPendingLog(Context context) throws IOException, JSONException {
+        PendingLogQueue queue = PendingLogQueue.get(context);
+        List<PendingLogQueue.Entry> pending = queue.read(queue.ackedCursor(), Integer.MAX_VALUE);
+        if (pending.isEmpty()) return null;
+
+        // input/type carry the latest entry for existing callers; entries has all of them
+        PendingLogQueue.Entry latest = pending.get(pending.size() - 1);
+        JSONObject ret = new JSONObject();
+        ret.put("input", latest.text);
+        ret.put("type", PendingLogQueue.outcomeName(latest.outcome));
+        ret.put("entries", toJSONArray(pending));
+
+        // Retrieve timer state sync info
+        TimerStateStore state = TimerStateStore.get(context);
+        if (state.endTime() > System.currentTimeMillis()) {
+            ret.put("activeEndTime", state.endTime());
+            ret.put("cyclesLeft", state.cyclesLeft());
+        }
+
+        // Acknowledge only what was handed over; anything appended meanwhile stays queued
+        try {
+            queue.ack(latest.next);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return ret;
+    }
+
+    // Entries stay queued until ackLog is called with the returned cursor.
+    private static JSONObject drainLog(Context context, Long from, int max) throws IOException, JSONException {
+        PendingLogQueue queue = PendingLogQueue.get(context);
+        long start = from != null ? from : queue.ackedCursor();
+        List<PendingLogQueue.Entry> pending = queue.read(start, max);
+        long next = pending.isEmpty() ? Math.max(start, queue.ackedCursor()) : pending.get(pending.size() - 1).next;
+
+        JSONObject ret = new JSONObject();
+        ret.put("entries", toJSONArray(pending));
+        ret.put("cursor", next);
+        ret.put("hasMore", next < queue.endCursor());
+        return ret;
+    }
+
+    private static JSONArray toJSONArray(List<PendingLogQueue.Entry> pending) throws JSONException {
+        JSONArray entries = new JSONArray();
+        for (PendingLogQueue.Entry entry : pending) {
+            JSONObject item = new JSONObject();
+            item.put("cursor", entry.cursor);
+            item.put("cycle", entry.cycle);
+            item.put("timer", entry.timer);
+            item.put("type", PendingLogQueue.outcomeName(entry.outcome));
+            item.put("input", entry.text);
+            item.put("timestamp", entry.wallTime);
+            item.put("elapsedRealtime", entry.elapsedTime);
+            entries.put(item);
+        }
+        return entries;
+    }
+
+    // Win streak, today's counts and rolling hit rate of one timer, read straight from its ring.
+    private static JSONObject cycleStats(Context context, String timerId) throws JSONException {
+        CycleOutcomeRing ring = CycleOutcomeRing.get(context, timerId);
+        long now = System.currentTimeMillis();
+        JSONObject ret = new JSONObject();
+        synchronized (ring) {
+            ret.put("streak", ring.streak());
+            ret.put("todayWins", ring.todayWins(now));
+            ret.put("todayLosses", ring.todayLosses(now));
+            ret.put("hitRate", ring.hitRate());
+            ret.put("window", ring.windowSize());
+            ret.put("total", ring.total());
+            if (ring.size() > 0) {
+                ret.put("lastCycle", ring.cycle(0));
+                ret.put("lastType", PendingLogQueue.outcomeName(ring.outcome(0)));
+                ret.put("lastTimestamp", ring.time(0));
+            }
+        }
+        return ret;
+    }
+
+    private static JSONObject metrics() throws JSONException {
+        JSONObject ret = new JSONObject();
+        for (int i = 0; i < TimerMetrics.COUNT; i++) {
+            ret.put(TimerMetrics.NAMES[i], TimerMetrics.get(i));
+        }
+        ret.put("since", TimerMetrics.since());
+        return ret;
+    }
+
+    // p50/p99/max of each latency histogram for one local day
+    private static JSONObject latencyStats(int daysAgo) throws JSONException {
+        int day = TimerLatency.today() - daysAgo;
+
+        JSONObject ret = new JSONObject();
+        ret.put("day", day);
+        for (int i = 0; i < TimerLatency.NAMES.length; i++) {
+            JSONObject stats = new JSONObject();
+            LatencyHistogram histogram = TimerLatency.get(i, day);
+            long count = histogram != null ? histogram.count() : 0;
+            stats.put("count", count);
+            if (histogram != null) {
+                stats.put("p50", histogram.percentile(50));
+                stats.put("p99", histogram.percentile(99));
+                stats.put("max", histogram.max());
+                stats.put("mean", histogram.sum() / count);
+            }
+            ret.put(TimerLatency.NAMES[i], stats);
+        }
+        return ret;
+    }
+
+    // Win/loss totals over fromDay..toDay (local days, both inclusive), by hour of day and per
+    // day. Days without results are left out of days.
+    private static JSONObject rollup(Context context, int fromDay, int toDay) throws IOException, JSONException {
+        CycleRollup rollup = CycleRollup.get(context);
+        JSONObject ret = new JSONObject();
+        JSONArray days = new JSONArray();
+        CycleRollup.Totals totals = new CycleRollup.Totals();
+        synchronized (rollup) {
+            int from = Math.max(fromDay, rollup.firstDay());
+            int to = Math.min(toDay, rollup.lastDay());
+            rollup.sum(from, to, totals);
+            for (int day = from; day <= to; day++) {
+                int wins = rollup.wins(day);
+                int losses = rollup.losses(day);
+                if (wins == 0 && losses == 0) continue;
+                JSONObject item = new JSONObject();
+                item.put("day", day);
+                item.put("wins", wins);
+                item.put("losses", losses);
+                days.put(item);
+            }
+        }
+        ret.put("wins", totals.wins);
+        ret.put("losses", totals.losses);
+        JSONArray hourWins = new JSONArray();
+        JSONArray hourLosses = new JSONArray();
+        for (int hour = 0; hour < CycleRollup.HOURS; hour++) {
+            hourWins.put(totals.hourWins[hour]);
+            hourLosses.put(totals.hourLosses[hour]);
+        }
+        ret.put("hourWins", hourWins);
+        ret.put("hourLosses", hourLosses);
+        ret.put("days", days);
+        return ret;
+    }
+
+    // Writes this process's trace ring to the cache dir; see TimerTrace.dump for the format.
+    static JSONObject dumpTrace(Context context) throws IOException, JSONException {
+        File file = TimerTrace.file(context.getCacheDir());
+        int events = TimerTrace.dump(file);
+        JSONObject ret = new JSONObject();
+        ret.put("process", TimerProcess.name());
+        ret.put("path", file.getPath());
+        ret.put("events", events);
+        ret.put("dropped", TimerTrace.written() - events);
+        return ret;
+    }
+
+    // Proportional set size of the calling process in kB, split the way dumpsys meminfo does.
+    static JSONObject memory() throws JSONException {
+        Debug.MemoryInfo info = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(info);
+        JSONObject ret = new JSONObject();
+        ret.put("process", TimerProcess.name());
+        ret.put("pid", Process.myPid());
+        ret.put("totalPss", info.getTotalPss());
+        ret.put("dalvikPss", info.dalvikPss);
+        ret.put("nativePss", info.nativePss);
+        ret.put("otherPss", info.otherPss);
+        return ret;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.quarterlog.app;
+
+import android.content.BroadcastReceiver;
+import android.os.Process;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+// The one background thread the native timer layer runs on. Plugin calls, receivers and the
+// service's countdown ticks all submit here instead of blocking the main or bridge thread on
+// disk and system-service calls, and instead of each component owning a thread of its own.
+// Tasks run one at a time in submission order. The stores still lock for themselves, since
+// TimerProvider calls from the UI process run on binder threads.
+final class TimerScheduler {
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread created = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "QuarterLogTimer");
+        created.setDaemon(true);
+        return created;
+    });
+
+    static {
+        // Countdown ticks are cancelled and rescheduled constantly; don't let them pile up
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    private TimerScheduler() {}
+
+    static ScheduledExecutorService get() {
+        return executor;
+    }
+
+    static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // Runs a receiver's work on the scheduler, keeping the broadcast (and the wakelock the
+    // system holds for it) alive until the work is done.
+    static void executeAsync(BroadcastReceiver receiver, Runnable task) {
+        BroadcastReceiver.PendingResult result = receiver.goAsync();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                result.finish();
+            }
+        });
+    }
+}
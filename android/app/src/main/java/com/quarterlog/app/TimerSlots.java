@@ -0,0 +1,41 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import java.util.HashSet;
+import java.util.Set;
+
+// Which named timers hold one of the service's MAX_TIMERS - 1 named slots, for the whole timer
+// process. TimerProvider claims the slot before it starts a timer, so two starts can no longer
+// both pass a check made before either reached the service. The service claims the slots of
+// the timers it restores and releases a slot when its timer's day ends.
+final class TimerSlots {
+    private static Set<String> named;
+
+    private TimerSlots() {}
+
+    // Returns false if every named slot is held by another timer.
+    static synchronized boolean claim(Context context, String timerId) {
+        if (TimerStateStore.DEFAULT_TIMER.equals(timerId)) return true;
+        Set<String> held = held(context);
+        if (held.contains(timerId)) return true;
+        if (held.size() >= TimerForegroundService.MAX_TIMERS - 1) return false;
+        held.add(timerId);
+        return true;
+    }
+
+    static synchronized void release(String timerId) {
+        if (named != null) named.remove(timerId);
+    }
+
+    // A new process starts from the timers whose journals are mid-day; the service is about to
+    // restore those.
+    private static Set<String> held(Context context) {
+        if (named == null) {
+            named = new HashSet<>();
+            for (String id : TimerStateStore.timerIds(context)) {
+                if (!TimerStateStore.DEFAULT_TIMER.equals(id) && TimerJournal.replay(context, id).live()) named.add(id);
+            }
+        }
+        return named;
+    }
+}
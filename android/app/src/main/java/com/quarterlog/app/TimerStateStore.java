@@ -0,0 +1,197 @@
+package com.quarterlog.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Persisted state of the running cycle timer as one fixed-layout binary record:
+//
+//   0  int  magic        16 int  totalCycles
+//   4  int  version      20 int  cyclesLeft
+//   8  long duration     24 long endTime (wall clock)
+//   32 int  crc32 of bytes 0..31
+//
+// Every update replaces the whole record with a write-then-rename, so a transition that
+// changes several fields costs a single small write and readers never see a torn record.
+// The default timer lives in timer_state.bin; other named timers get timer_state_<id>.bin.
+final class TimerStateStore {
+    static final long DEFAULT_DURATION = 15 * 60 * 1000;
+    static final String DEFAULT_TIMER = "quarter";
+
+    private static final int MAGIC = 0x514c5453; // "QLTS"
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 36;
+
+    private static final String TIMER_PREFIX = "timer_state_";
+    private static final String SUFFIX = ".bin";
+
+    private static final Map<String, TimerStateStore> instances = new HashMap<>();
+
+    private final File file;
+    private final File tmpFile;
+    private final boolean sync;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private long currentDuration = DEFAULT_DURATION;
+    private int totalCycles;
+    private int cyclesLeft;
+    private long endTime;
+
+    static TimerStateStore get(Context context) {
+        return get(context, DEFAULT_TIMER);
+    }
+
+    static synchronized TimerStateStore get(Context context, String timerId) {
+        TimerStateStore store = instances.get(timerId);
+        if (store == null) {
+            store = new TimerStateStore(fileFor(context.getFilesDir(), timerId));
+            if (!store.load() && DEFAULT_TIMER.equals(timerId) && hasLegacyPreferences(context, "TimerState")) {
+                store.migrateLegacy(context);
+            }
+            instances.put(timerId, store);
+        }
+        return store;
+    }
+
+    // Opening a preferences file parses its whole XML, and the one-time migrations run on cold
+    // starts, so only open the ones that were ever written.
+    static boolean hasLegacyPreferences(Context context, String name) {
+        File dir = new File(context.getApplicationInfo().dataDir, "shared_prefs");
+        return new File(dir, name + ".xml").exists();
+    }
+
+    // Ids of every timer with a state file, the default timer first.
+    static List<String> timerIds(Context context) {
+        List<String> ids = new ArrayList<>();
+        ids.add(DEFAULT_TIMER);
+        String[] names = context.getFilesDir().list();
+        if (names == null) return ids;
+        for (String name : names) {
+            if (name.startsWith(TIMER_PREFIX) && name.endsWith(SUFFIX)) {
+                ids.add(name.substring(TIMER_PREFIX.length(), name.length() - SUFFIX.length()));
+            }
+        }
+        return ids;
+    }
+
+    // Forgets a named timer once its day is over. The default timer keeps its record so the
+    // web layer can still read the final state.
+    static synchronized void discard(Context context, String timerId) {
+        if (DEFAULT_TIMER.equals(timerId)) return;
+        instances.remove(timerId);
+        fileFor(context.getFilesDir(), timerId).delete();
+    }
+
+    private static File fileFor(File dir, String timerId) {
+        return new File(dir, DEFAULT_TIMER.equals(timerId) ? "timer_state.bin" : TIMER_PREFIX + timerId + SUFFIX);
+    }
+
+    TimerStateStore(File file) {
+        this(file, true);
+    }
+
+    // sync=false skips the fsync before the rename; only for benchmarks that want the cost of
+    // the record without the host disk's
+    TimerStateStore(File file, boolean sync) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.sync = sync;
+    }
+
+    synchronized long currentDuration() {
+        return currentDuration;
+    }
+
+    synchronized int totalCycles() {
+        return totalCycles;
+    }
+
+    synchronized int cyclesLeft() {
+        return cyclesLeft;
+    }
+
+    synchronized long endTime() {
+        return endTime;
+    }
+
+    // 1-based index of the cycle currently counting down (or awaiting its result).
+    synchronized int currentCycle() {
+        return Math.max(1, totalCycles - cyclesLeft + 1);
+    }
+
+    // Replaces the whole record in one write.
+    synchronized void update(long currentDuration, int totalCycles, int cyclesLeft, long endTime) {
+        this.currentDuration = currentDuration;
+        this.totalCycles = totalCycles;
+        this.cyclesLeft = cyclesLeft;
+        this.endTime = endTime;
+        try {
+            write();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Returns false if there is no valid record on disk.
+    synchronized boolean load() {
+        if (!file.isFile() || file.length() != RECORD_BYTES) return false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(buffer.array());
+        } catch (IOException e) {
+            return false;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return false;
+        crc.reset();
+        crc.update(buffer.array(), 0, RECORD_BYTES - 4);
+        if ((int) crc.getValue() != buffer.getInt(RECORD_BYTES - 4)) return false;
+
+        currentDuration = buffer.getLong(8);
+        totalCycles = buffer.getInt(16);
+        cyclesLeft = buffer.getInt(20);
+        endTime = buffer.getLong(24);
+        return true;
+    }
+
+    private void write() throws IOException {
+        buffer.clear();
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(currentDuration)
+                .putInt(totalCycles)
+                .putInt(cyclesLeft)
+                .putLong(endTime);
+        crc.reset();
+        crc.update(buffer.array(), 0, RECORD_BYTES - 4);
+        buffer.putInt((int) crc.getValue());
+
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(buffer.array(), 0, RECORD_BYTES);
+            if (sync) out.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        TimerMetrics.increment(TimerMetrics.STORAGE_WRITES);
+    }
+
+    // One-time import of the values the service used to keep in the TimerState preferences.
+    private void migrateLegacy(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences("TimerState", Context.MODE_PRIVATE);
+        if (!prefs.contains("totalCycles")) return;
+        update(prefs.getLong("currentDuration", DEFAULT_DURATION),
+                prefs.getInt("totalCycles", 0),
+                prefs.getInt("cyclesLeft", 0),
+                prefs.getLong("endTime", 0));
+        prefs.edit().clear().apply();
+    }
+}
@@ -0,0 +1,165 @@
+package com.quarterlog.app;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Always-on trace of what the native timer layer did most recently. Each section shows up in
+// systrace/Perfetto through android.os.Trace and is also kept in a ring of the last CAPACITY
+// events, so a user can send us a dump when the timer misbehaves.
+//
+// Writing an event claims a slot with one AtomicLong increment and fills it with three stores:
+// no locks and no allocation. Slots are [long elapsedRealtimeNanos][long kind:8 event:8 arg:32]
+// [long seq + 1], the last one written after the others, so dump() skips a slot it sees being
+// overwritten instead of reporting a torn event.
+final class TimerTrace {
+    static final int START_COMMAND = 0;
+    static final int CREATE_NOTIFICATION = 1;
+    static final int TRIGGER_ALERT = 2;
+    static final int ALERT_ACTIVITY = 3;
+    // arg is the nameId of the plugin or provider method
+    static final int PLUGIN_CALL = 4;
+    static final int PROVIDER_CALL = 5;
+
+    static final String[] NAMES = {
+            "TimerForegroundService.onStartCommand",
+            "createNotification",
+            "triggerAlertNotification",
+            "AlertActivity.onCreate",
+            "TimerPlugin",
+            "TimerProvider",
+    };
+
+    static final int BEGIN = 1;
+    static final int END = 2;
+
+    static final int CAPACITY = 2048;
+    private static final int SLOT = 3;
+    private static final int MAGIC = 0x514c5452; // "QLTR"
+    private static final int VERSION = 1;
+
+    private static final AtomicLongArray ring = new AtomicLongArray(CAPACITY * SLOT);
+    private static final AtomicLong next = new AtomicLong();
+    // Intent actions and method names seen so far; only the first use of a name allocates
+    private static final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    private TimerTrace() {}
+
+    static void begin(int event) {
+        begin(event, 0);
+    }
+
+    static void begin(int event, int arg) {
+        Trace.beginSection(NAMES[event]);
+        write(BEGIN, event, arg);
+    }
+
+    static void end(int event) {
+        write(END, event, 0);
+        Trace.endSection();
+    }
+
+    // Section named after a plugin or provider method, e.g. "getMetrics"
+    static void beginCall(int event, String method) {
+        Trace.beginSection(method);
+        write(BEGIN, event, nameId(method));
+    }
+
+    static void endCall(int event, String method) {
+        write(END, event, nameId(method));
+        Trace.endSection();
+    }
+
+    // Stable small number for a name, so an event can refer to it; -1 for null.
+    static int nameId(String name) {
+        if (name == null) return -1;
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        synchronized (names) {
+            id = nameIds.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                nameIds.put(name, id);
+            }
+        }
+        return id;
+    }
+
+    private static void write(int kind, int event, int arg) {
+        long seq = next.getAndIncrement();
+        int base = (int) (seq % CAPACITY) * SLOT;
+        ring.lazySet(base + 2, 0);
+        ring.lazySet(base, SystemClock.elapsedRealtimeNanos());
+        ring.lazySet(base + 1, ((long) kind << 56) | ((long) event << 48) | (arg & 0xffffffffL));
+        ring.set(base + 2, seq + 1);
+    }
+
+    // Total events written since the process started, including those already overwritten.
+    static long written() {
+        return next.get();
+    }
+
+    // Writes the ring, oldest event first, to timer_trace<process suffix>.bin in dir:
+    //
+    //   [int magic "QLTR"][int version][long wallTime][long elapsedRealtimeNanos]
+    //   [int eventNames][utf name...][int names][utf name...]
+    //   [int events] then per event [long elapsedRealtimeNanos][byte kind][byte event][int arg]
+    //
+    // wallTime and elapsedRealtimeNanos are taken together, to place events on the wall clock.
+    // Returns the number of events written.
+    static int dump(File file) throws IOException {
+        long end = next.get();
+        long start = Math.max(0, end - CAPACITY);
+        long[] times = new long[(int) (end - start)];
+        long[] packed = new long[times.length];
+        int count = 0;
+        for (long seq = start; seq < end; seq++) {
+            int base = (int) (seq % CAPACITY) * SLOT;
+            if (ring.get(base + 2) != seq + 1) continue;
+            long time = ring.get(base);
+            long value = ring.get(base + 1);
+            if (ring.get(base + 2) != seq + 1) continue;
+            times[count] = time;
+            packed[count] = value;
+            count++;
+        }
+
+        String[] known;
+        synchronized (names) {
+            known = names.toArray(new String[0]);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(SystemClock.elapsedRealtimeNanos());
+            out.writeInt(NAMES.length);
+            for (String name : NAMES) out.writeUTF(name);
+            out.writeInt(known.length);
+            for (String name : known) out.writeUTF(name);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(times[i]);
+                out.writeByte((int) (packed[i] >>> 56));
+                out.writeByte((int) (packed[i] >>> 48) & 0xff);
+                out.writeInt((int) packed[i]);
+            }
+        }
+        return count;
+    }
+
+    static File file(File dir) {
+        return new File(dir, "timer_trace" + TimerProcess.fileSuffix() + ".bin");
+    }
+}
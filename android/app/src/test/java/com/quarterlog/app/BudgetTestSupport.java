@@ -0,0 +1,86 @@
+package com.quarterlog.app;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+// Shared plumbing for the Robolectric budget tests: resetting the process-wide singletons
+// between tests, letting the main looper and the timer scheduler run dry, and reading which
+// alarms are armed for which receiver.
+final class BudgetTestSupport {
+    private BudgetTestSupport() {}
+
+    // Robolectric gives every test a fresh files dir but keeps static state, so forget every
+    // cached store as if the process had died. Also used mid-test to simulate process death.
+    static void resetProcessState() throws Exception {
+        drainScheduler();
+        ((Map<?, ?>) staticField(TimerStateStore.class, "instances").get(null)).clear();
+        ((Map<?, ?>) staticField(CycleOutcomeRing.class, "instances").get(null)).clear();
+        ((Map<?, ?>) staticField(TimerJournal.class, "instances").get(null)).clear();
+        staticField(ScheduleEngine.class, "instance").set(null, null);
+        staticField(PendingLogQueue.class, "instance").set(null, null);
+        staticField(CycleHistory.class, "instance").set(null, null);
+        staticField(CycleRollup.class, "instance").set(null, null);
+        staticField(TimerSlots.class, "named").set(null, null);
+        staticField(TimerForegroundService.class, "expiryWakeLock").set(null, null);
+        staticField(TimerNotifications.class, "channelsCreated").set(null, false);
+    }
+
+    private static Field staticField(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    // Waits for everything already submitted to the scheduler thread.
+    static void drainScheduler() throws Exception {
+        TimerScheduler.get().submit(() -> {}).get(5, TimeUnit.SECONDS);
+    }
+
+    // Delivers pending broadcasts, runs the work receivers hand to the scheduler, then delivers
+    // whatever that work broadcast in turn.
+    static void settle() throws Exception {
+        shadowOf(Looper.getMainLooper()).idle();
+        drainScheduler();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    static List<ShadowAlarmManager.ScheduledAlarm> alarmsFor(Context context, Class<?> receiver) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = new ArrayList<>();
+        for (ShadowAlarmManager.ScheduledAlarm alarm : shadowOf(alarmManager).getScheduledAlarms()) {
+            PendingIntent operation = alarm.getOperation();
+            if (operation == null) continue;
+            Intent intent = shadowOf(operation).getSavedIntent();
+            if (intent.getComponent() != null && receiver.getName().equals(intent.getComponent().getClassName())) {
+                alarms.add(alarm);
+            }
+        }
+        return alarms;
+    }
+
+    // Counter values at construction, so a test can assert on what one scenario cost.
+    static final class MetricsDelta {
+        private final long[] start = new long[TimerMetrics.COUNT];
+
+        MetricsDelta() {
+            for (int i = 0; i < TimerMetrics.COUNT; i++) {
+                start[i] = TimerMetrics.get(i);
+            }
+        }
+
+        long get(int counter) {
+            return TimerMetrics.get(counter) - start[counter];
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.quarterlog.app;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class CountdownTextTest {
+
+    @Test
+    public void formatsRoundedUpMinutes() {
+        CountdownText text = new CountdownText();
+        assertTrue(text.set(15 * 60 * 1000));
+        assertEquals("15 min", text.toString());
+        assertTrue(text.set(60 * 1000 - 1));
+        assertEquals("1 min", text.toString());
+        assertTrue(text.set(0));
+        assertEquals("0 min", text.toString());
+    }
+
+    @Test
+    public void reportsOnlyVisibleChanges() {
+        CountdownText text = new CountdownText();
+        assertTrue(text.set(14 * 60 * 1000 + 1));
+        assertFalse(text.set(14 * 60 * 1000 + 30 * 1000));
+        assertTrue(text.set(14 * 60 * 1000));
+    }
+
+    @Test
+    public void tickAllocatesNothingWhenTextIsUnchanged() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        CountdownText text = new CountdownText();
+        text.set(15 * 60 * 1000);
+        text.toString();
+
+        // Warm up so JIT and class loading don't show up in the measurement
+        for (int i = 0; i < 100_000; i++) text.set(15 * 60 * 1000 - (i % 1000));
+
+        long tid = Thread.currentThread().getId();
+        long overhead = threads.getThreadAllocatedBytes(tid);
+        overhead = threads.getThreadAllocatedBytes(tid) - overhead;
+
+        int ticks = 60_000;
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ticks; i++) {
+            text.set(15 * 60 * 1000 - (i % 1000));
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before - overhead;
+
+        assertEquals("bytes allocated per tick", 0.0, (double) allocated / ticks, 0.01);
+    }
+}
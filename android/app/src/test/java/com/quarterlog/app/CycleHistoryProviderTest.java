@@ -0,0 +1,117 @@
+package com.quarterlog.app;
+
+import static org.junit.Assert.*;
+
+import android.app.Application;
+import android.database.Cursor;
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// Paging through recorded results the way the plugin does: filtered by day and outcome, a
+// page at a time, resuming from the cursor the previous page handed back.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class CycleHistoryProviderTest {
+    private Application context;
+
+    @Before
+    public void setUp() throws Exception {
+        BudgetTestSupport.resetProcessState();
+        context = ApplicationProvider.getApplicationContext();
+        Robolectric.setupContentProvider(CycleHistoryProvider.class, context.getPackageName() + ".history");
+        for (int cycle = 1; cycle <= 10; cycle++) {
+            PendingLogQueue.record(context, cycle % 2 == 0 ? "ACTION_WIN" : "ACTION_LOSS", "entry " + cycle, cycle);
+        }
+        PendingLogQueue.record(context, "other", "ACTION_WIN", "named", 1);
+    }
+
+    @Test
+    public void pagesResumeFromCursor() {
+        int today = TimerLatency.localDay(System.currentTimeMillis());
+        Uri.Builder wins = CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("fromDay", String.valueOf(today))
+                .appendQueryParameter("outcome", "WIN")
+                .appendQueryParameter("timer", TimerStateStore.DEFAULT_TIMER)
+                .appendQueryParameter("limit", "3");
+
+        int next;
+        try (Cursor page = query(wins.build())) {
+            assertEquals(3, page.getCount());
+            assertTrue(page.moveToFirst());
+            assertEquals("entry 2", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+            assertEquals("WIN", page.getString(CycleHistoryProvider.COLUMN_TYPE));
+            assertEquals(2, page.getInt(CycleHistoryProvider.COLUMN_CYCLE));
+            assertEquals(today, page.getInt(CycleHistoryProvider.COLUMN_DAY));
+            assertTrue(page.moveToLast());
+            assertEquals("entry 6", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+            assertTrue(page.getExtras().getBoolean(CycleHistoryProvider.EXTRA_HAS_MORE));
+            next = page.getExtras().getInt(CycleHistoryProvider.EXTRA_NEXT);
+        }
+
+        try (Cursor page = query(wins.appendQueryParameter("after", String.valueOf(next)).build())) {
+            assertEquals(2, page.getCount());
+            assertTrue(page.moveToFirst());
+            assertEquals("entry 8", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+            assertTrue(page.moveToNext());
+            assertEquals("entry 10", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+            // The named timer's win is scanned past, so nothing is left
+            assertFalse(page.getExtras().getBoolean(CycleHistoryProvider.EXTRA_HAS_MORE));
+        }
+    }
+
+    @Test
+    public void timerAndDayFiltersNarrowTheRange() {
+        int today = TimerLatency.localDay(System.currentTimeMillis());
+        try (Cursor page = query(CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("timer", "other").build())) {
+            assertEquals(1, page.getCount());
+            assertTrue(page.moveToFirst());
+            assertEquals("other", page.getString(CycleHistoryProvider.COLUMN_TIMER));
+            assertEquals("named", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+        }
+        try (Cursor page = query(CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("toDay", String.valueOf(today - 1)).build())) {
+            assertEquals(0, page.getCount());
+            assertFalse(page.getExtras().getBoolean(CycleHistoryProvider.EXTRA_HAS_MORE));
+        }
+        try (Cursor page = query(CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("fromDay", String.valueOf(today + 1)).build())) {
+            assertEquals(0, page.getCount());
+        }
+    }
+
+    @Test
+    public void rowsAppendedAfterTheClockWentBackAreFound() throws Exception {
+        long now = System.currentTimeMillis();
+        int today = TimerLatency.localDay(now);
+        CycleHistory.get(context).append(TimerStateStore.DEFAULT_TIMER, now - 24 * 60 * 60 * 1000,
+                1, PendingLogQueue.OUTCOME_WIN, "yesterday");
+
+        try (Cursor page = query(CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("fromDay", String.valueOf(today - 1))
+                .appendQueryParameter("toDay", String.valueOf(today - 1)).build())) {
+            assertEquals(1, page.getCount());
+            assertTrue(page.moveToFirst());
+            assertEquals("yesterday", page.getString(CycleHistoryProvider.COLUMN_INPUT));
+        }
+        // A page that ends on the last match has nothing more
+        try (Cursor page = query(CycleHistoryProvider.uri(context).buildUpon()
+                .appendQueryParameter("timer", "other")
+                .appendQueryParameter("limit", "1").build())) {
+            assertEquals(1, page.getCount());
+            assertFalse(page.getExtras().getBoolean(CycleHistoryProvider.EXTRA_HAS_MORE));
+        }
+    }
+
+    private Cursor query(Uri uri) {
+        Cursor cursor = context.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+}
@@ -0,0 +1,92 @@
+package com.quarterlog.app;
+
+import static org.junit.Assert.*;
+
+import android.app.Application;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.util.Calendar;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// Range totals come out of the per-day records, survive the process, and a new rollup picks
+// up results that were recorded before it existed without counting any twice.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class CycleRollupTest {
+    private Application context;
+
+    @Before
+    public void setUp() throws Exception {
+        BudgetTestSupport.resetProcessState();
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void rangeTotalsAddUpDaysAndHours() throws Exception {
+        CycleRollup rollup = CycleRollup.get(context);
+        long first = at(2025, Calendar.MARCH, 3, 9);
+        long later = at(2026, Calendar.APRIL, 7, 21);
+        rollup.add(first, PendingLogQueue.OUTCOME_WIN);
+        rollup.add(first + 20 * 60 * 1000, PendingLogQueue.OUTCOME_WIN);
+        rollup.add(at(2025, Calendar.MARCH, 3, 14), PendingLogQueue.OUTCOME_LOSS);
+        rollup.add(later, PendingLogQueue.OUTCOME_WIN);
+        // Earlier than anything so far, e.g. after the clock was set back
+        rollup.add(at(2025, Calendar.FEBRUARY, 1, 9), PendingLogQueue.OUTCOME_LOSS);
+
+        int firstDay = TimerLatency.localDay(first);
+        int laterDay = TimerLatency.localDay(later);
+        assertEquals(TimerLatency.localDay(at(2025, Calendar.FEBRUARY, 1, 9)), rollup.firstDay());
+        assertEquals(laterDay, rollup.lastDay());
+        assertEquals(2, rollup.wins(firstDay));
+        assertEquals(1, rollup.losses(firstDay));
+
+        CycleRollup.Totals all = new CycleRollup.Totals();
+        rollup.sum(Integer.MIN_VALUE, Integer.MAX_VALUE, all);
+        assertEquals(3, all.wins);
+        assertEquals(2, all.losses);
+        assertEquals(2, all.hourWins[9]);
+        assertEquals(1, all.hourLosses[9]);
+        assertEquals(1, all.hourLosses[14]);
+        assertEquals(1, all.hourWins[21]);
+
+        CycleRollup.Totals march = new CycleRollup.Totals();
+        rollup.sum(firstDay, laterDay - 1, march);
+        assertEquals(2, march.wins);
+        assertEquals(1, march.losses);
+
+        // Process death: everything is read back from the file
+        BudgetTestSupport.resetProcessState();
+        rollup = CycleRollup.get(context);
+        assertEquals(5, rollup.results());
+        assertEquals(2, rollup.wins(firstDay));
+        assertEquals(1, rollup.wins(laterDay));
+    }
+
+    @Test
+    public void newRollupIsFilledFromHistory() throws Exception {
+        for (int cycle = 1; cycle <= 6; cycle++) {
+            PendingLogQueue.record(context, cycle % 3 == 0 ? "ACTION_LOSS" : "ACTION_WIN", "entry " + cycle, cycle);
+        }
+        BudgetTestSupport.resetProcessState();
+        assertTrue(new File(context.getFilesDir(), "rollup.bin").delete());
+
+        PendingLogQueue.record(context, "ACTION_WIN", "entry 7", 7);
+        CycleRollup rollup = CycleRollup.get(context);
+        assertEquals(7, rollup.results());
+        assertEquals(CycleHistory.get(context).size(), rollup.results());
+        int today = TimerLatency.today();
+        assertEquals(5, rollup.wins(today));
+        assertEquals(2, rollup.losses(today));
+    }
+
+    private static long at(int year, int month, int day, int hour) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, hour, 5);
+        return calendar.getTimeInMillis();
+    }
+}
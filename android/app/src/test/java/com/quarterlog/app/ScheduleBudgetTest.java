@@ -0,0 +1,190 @@
+package com.quarterlog.app;
+
+import static com.quarterlog.app.BudgetTestSupport.alarmsFor;
+import static com.quarterlog.app.BudgetTestSupport.settle;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.AlarmManager;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+// Budgets for the schedule side: however many schedules the web layer sets, and across
+// reboots and fires, exactly one schedule alarm is armed and firing it writes nothing.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ScheduleBudgetTest {
+    private static final int SCHEDULES = 20;
+
+    private Application context;
+    private TimerPlugin plugin;
+
+    @Before
+    public void setUp() throws Exception {
+        BudgetTestSupport.resetProcessState();
+        context = ApplicationProvider.getApplicationContext();
+        Bridge bridge = mock(Bridge.class);
+        when(bridge.getContext()).thenReturn(context);
+        plugin = new TimerPlugin();
+        plugin.setBridge(bridge);
+        Robolectric.setupContentProvider(TimerProvider.class, context.getPackageName() + ".timer");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BudgetTestSupport.drainScheduler();
+    }
+
+    @Test
+    public void manySchedulesArmOneAlarm() throws Exception {
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        JSObject result = setSchedules(SCHEDULES);
+
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, DailyStartReceiver.class);
+        assertEquals(1, alarms.size());
+        assertEquals(result.getLong("nextFireTime"), alarms.get(0).getTriggerAtMs());
+        // The whole set is saved in one write
+        assertEquals(1, metrics.get(TimerMetrics.STORAGE_WRITES));
+        assertTrue(context.getSharedPreferences("DailySchedule", Context.MODE_PRIVATE).getAll().isEmpty());
+
+        setSchedules(SCHEDULES);
+        assertEquals(1, alarmsFor(context, DailyStartReceiver.class).size());
+    }
+
+    @Test
+    public void rebootRearmsOneAlarm() throws Exception {
+        long nextFireTime = setSchedules(SCHEDULES).getLong("nextFireTime");
+
+        // Alarms don't survive a reboot, and neither does the process
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(alarmsFor(context, DailyStartReceiver.class).get(0).getOperation());
+        BudgetTestSupport.resetProcessState();
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+
+        context.sendBroadcast(new Intent(Intent.ACTION_BOOT_COMPLETED).setClass(context, BootReceiver.class));
+        settle();
+
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, DailyStartReceiver.class);
+        assertEquals(1, alarms.size());
+        assertEquals(nextFireTime, alarms.get(0).getTriggerAtMs());
+        assertEquals(1, metrics.get(TimerMetrics.BROADCASTS_RECEIVED));
+        assertEquals(0, metrics.get(TimerMetrics.STORAGE_WRITES));
+    }
+
+    @Test
+    public void fireStartsServiceAndRearmsNextEvent() throws Exception {
+        setSchedules(SCHEDULES);
+
+        long previous = 0;
+        for (int fire = 0; fire < 3; fire++) {
+            List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, DailyStartReceiver.class);
+            assertEquals(1, alarms.size());
+            ShadowAlarmManager.ScheduledAlarm alarm = alarms.get(0);
+            assertTrue(alarm.getTriggerAtMs() > previous);
+            previous = alarm.getTriggerAtMs();
+
+            long wait = alarm.getTriggerAtMs() - System.currentTimeMillis();
+            if (wait > 0) shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(wait));
+            BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+            alarm.getOperation().send();
+            settle();
+
+            Intent started = shadowOf(context).getNextStartedService();
+            assertNotNull(started);
+            assertEquals(TimerForegroundService.class.getName(), started.getComponent().getClassName());
+            assertTrue(started.getIntExtra("totalCycles", 0) > 0);
+            assertEquals(1, metrics.get(TimerMetrics.BROADCASTS_RECEIVED));
+            assertEquals(0, metrics.get(TimerMetrics.STORAGE_WRITES));
+            assertNull(shadowOf(context).getNextStartedService());
+        }
+        assertEquals(1, alarmsFor(context, DailyStartReceiver.class).size());
+    }
+
+    @Test
+    public void sameStartMinuteIsRejected() throws Exception {
+        setSchedules(SCHEDULES);
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+
+        JSArray schedules = new JSArray();
+        schedules.put(new JSObject().put("id", "a").put("startTime", "09:00").put("daysOfWeek", new JSONArray("[1,2]")));
+        schedules.put(new JSObject().put("id", "b").put("startTime", "09:00").put("daysOfWeek", new JSONArray("[2,3]")));
+        RecordingCall call = new RecordingCall("setSchedules", new JSObject().put("schedules", schedules));
+        plugin.setSchedules(call);
+        assertTrue(call.done.await(5, TimeUnit.SECONDS));
+
+        assertNotNull(call.error);
+        assertEquals(0, metrics.get(TimerMetrics.STORAGE_WRITES));
+        assertEquals(SCHEDULES, ScheduleEngine.get(context).schedules().size());
+    }
+
+    // Schedules an hour apart from 06:00, alternating weekdays and weekends.
+    private JSObject setSchedules(int count) throws Exception {
+        JSArray schedules = new JSArray();
+        for (int i = 0; i < count; i++) {
+            JSObject schedule = new JSObject();
+            schedule.put("id", "s" + i);
+            schedule.put("startTime", String.format("%02d:%02d", 6 + i % 16, (i * 7) % 60));
+            schedule.put("endTime", String.format("%02d:00", 7 + i % 16));
+            schedule.put("daysOfWeek", i % 2 == 0 ? new JSONArray("[1,2,3,4,5]") : new JSONArray("[0,6]"));
+            schedules.put(schedule);
+        }
+        JSObject data = new JSObject();
+        data.put("schedules", schedules);
+
+        RecordingCall call = new RecordingCall("setSchedules", data);
+        plugin.setSchedules(call);
+        assertTrue(call.done.await(5, TimeUnit.SECONDS));
+        assertNull(call.error, call.error);
+        return call.result;
+    }
+
+    // PluginCall that keeps its outcome instead of sending it over the bridge.
+    private static final class RecordingCall extends PluginCall {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile JSObject result;
+        volatile String error;
+
+        RecordingCall(String method, JSObject data) {
+            super(null, "Timer", "0", method, data);
+        }
+
+        @Override
+        public void resolve() {
+            resolve(new JSObject());
+        }
+
+        @Override
+        public void resolve(JSObject data) {
+            result = data;
+            done.countDown();
+        }
+
+        @Override
+        public void reject(String msg, String code, Exception ex, JSObject data) {
+            error = msg;
+            done.countDown();
+        }
+    }
+}
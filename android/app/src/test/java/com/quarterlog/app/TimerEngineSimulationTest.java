@@ -0,0 +1,201 @@
+package com.quarterlog.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Drives TimerEngine through simulated days on the JVM: the clock only moves when the test
+// fires the armed expiry alarm, so an 8-hour day runs in milliseconds.
+public class TimerEngineSimulationTest {
+    private static final long QUARTER = 15 * 60 * 1000;
+    private static final long DAY_START = 1_700_000_000_000L;
+    // Mean cost of one engine transition with no-op effects, JIT warm-up included
+    private static final long TRANSITION_BUDGET_NS = 10_000;
+
+    private FakeClock clock;
+    private RecordingEffects effects;
+    private TimerEngine engine;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(DAY_START, 5_000_000L);
+        effects = new RecordingEffects();
+        engine = new TimerEngine(clock, effects);
+    }
+
+    @Test
+    public void fullDayOfQuarterCycles() {
+        engine.start(QUARTER, 32, 32);
+
+        for (int cycle = 1; cycle <= 32; cycle++) {
+            assertEquals(TimerEngine.RUNNING, engine.phase());
+            assertEquals(cycle, engine.currentCycle());
+            fireExpiry();
+            assertEquals(TimerEngine.AWAITING_RESULT, engine.phase());
+            assertEquals(cycle, effects.lastAlertCycle);
+
+            clock.advance(4_000);
+            boolean running = engine.onResult(cycle % 4 == 0 ? PendingLogQueue.OUTCOME_LOSS : PendingLogQueue.OUTCOME_WIN, "cycle " + cycle);
+            assertEquals(cycle < 32, running);
+        }
+
+        assertEquals(TimerEngine.IDLE, engine.phase());
+        assertEquals(32, effects.countdowns);
+        assertEquals(32, effects.alerts);
+        assertEquals(32, effects.results);
+        assertEquals(24, effects.wins);
+        assertEquals(32, effects.alarmsArmed);
+        // One write per cycle start; the end of the day is left to finish()
+        assertEquals(32, effects.persists);
+        assertEquals(1, effects.finishes);
+        assertEquals(0, engine.cyclesLeft());
+        assertTrue(clock.now - DAY_START >= 8 * 60 * 60 * 1000);
+    }
+
+    @Test
+    public void repeatedResultForSameAlertIsIgnored() {
+        engine.start(QUARTER, 4, 4);
+        fireExpiry();
+
+        assertTrue(engine.onResult(PendingLogQueue.OUTCOME_WIN, ""));
+        assertTrue(engine.onResult(PendingLogQueue.OUTCOME_LOSS, ""));
+        assertTrue(engine.onResult(PendingLogQueue.OUTCOME_WIN, ""));
+
+        assertEquals(1, effects.results);
+        assertEquals(3, engine.cyclesLeft());
+        assertEquals(2, engine.currentCycle());
+    }
+
+    @Test
+    public void restoreAfterDeadlineAwaitsResult() {
+        engine.restore(QUARTER, 32, 20, clock.now - 1_000);
+        assertEquals(TimerEngine.AWAITING_RESULT, engine.phase());
+        assertEquals(13, engine.currentCycle());
+
+        assertTrue(engine.onResult(PendingLogQueue.OUTCOME_WIN, ""));
+        assertEquals(19, engine.cyclesLeft());
+        assertEquals(clock.now + QUARTER, engine.endTime());
+    }
+
+    @Test
+    public void restoreBeforeDeadlineKeepsRunning() {
+        engine.restore(QUARTER, 32, 20, clock.now + 60_000);
+        assertEquals(TimerEngine.RUNNING, engine.phase());
+        assertEquals(0, effects.countdowns + effects.persists + effects.alarmsArmed);
+    }
+
+    @Test
+    public void stopCancelsExpiryAndFinishes() {
+        engine.start(QUARTER, 32, 32);
+        engine.stop();
+
+        assertEquals(TimerEngine.IDLE, engine.phase());
+        assertEquals(1, effects.finishes);
+        assertEquals(-1, effects.armedAt);
+    }
+
+    @Test
+    public void transitionCost() {
+        int days = 2_000;
+        long started = System.nanoTime();
+        for (int day = 0; day < days; day++) {
+            engine.start(QUARTER, 32, 32);
+            for (int cycle = 0; cycle < 32; cycle++) {
+                fireExpiry();
+                engine.onResult(PendingLogQueue.OUTCOME_WIN, "");
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        long transitions = days * 32L * 2;
+        assertEquals(TimerEngine.IDLE, engine.phase());
+        long perTransition = elapsed / transitions;
+        assertTrue("ns per transition: " + perTransition, perTransition <= TRANSITION_BUDGET_NS);
+    }
+
+    private void fireExpiry() {
+        assertTrue("no expiry armed", effects.armedAt >= 0);
+        clock.advanceElapsedTo(effects.armedAt);
+        effects.armedAt = -1;
+        engine.onExpired();
+    }
+
+    private static final class FakeClock implements TimerEngine.Clock {
+        long now;
+        long elapsed;
+
+        FakeClock(long now, long elapsed) {
+            this.now = now;
+            this.elapsed = elapsed;
+        }
+
+        void advance(long ms) {
+            now += ms;
+            elapsed += ms;
+        }
+
+        void advanceElapsedTo(long target) {
+            advance(Math.max(0, target - elapsed));
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return elapsed;
+        }
+    }
+
+    private static final class RecordingEffects implements TimerEngine.Effects {
+        int countdowns;
+        int alerts;
+        int lastAlertCycle;
+        int results;
+        int wins;
+        int persists;
+        int alarmsArmed;
+        int finishes;
+        long armedAt = -1;
+
+        @Override
+        public void showCountdown(long endTime, int cycle, int totalCycles) {
+            countdowns++;
+        }
+
+        @Override
+        public void showAlert(int cycle, int totalCycles) {
+            alerts++;
+            lastAlertCycle = cycle;
+        }
+
+        @Override
+        public void recordResult(int cycle, byte outcome, String text) {
+            results++;
+            if (outcome == PendingLogQueue.OUTCOME_WIN) wins++;
+        }
+
+        @Override
+        public void persist(long duration, int totalCycles, int cyclesLeft, long endTime) {
+            persists++;
+        }
+
+        @Override
+        public void armExpiry(long triggerAtElapsed) {
+            alarmsArmed++;
+            armedAt = triggerAtElapsed;
+        }
+
+        @Override
+        public void cancelExpiry() {
+            armedAt = -1;
+        }
+
+        @Override
+        public void finish() {
+            finishes++;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.quarterlog.app;
+
+import static com.quarterlog.app.BudgetTestSupport.alarmsFor;
+import static com.quarterlog.app.BudgetTestSupport.settle;
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import androidx.test.core.app.ApplicationProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+import org.robolectric.shadows.ShadowPowerManager;
+
+// Hard budgets for what the foreground service costs per cycle: notification posts, storage
+// writes, armed alarms and wakelock time. The alarm, broadcast and service start hops run
+// through Robolectric's shadows exactly as the system would deliver them, so a change that
+// makes the native layer chattier fails here instead of showing up as battery drain.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TimerServiceBudgetTest {
+    private static final long QUARTER = 15 * 60 * 1000;
+    private static final int CYCLES = 32;
+    private static final long WAKELOCK_BUDGET_MS = 1000;
+    private static final long TAP_TO_NEXT_CYCLE_BUDGET_MS = 100;
+    private static final long DAILY_START_BUDGET_MS = 100;
+
+    private Application context;
+    private ServiceController<TimerForegroundService> controller;
+    private int startId;
+
+    @Before
+    public void setUp() throws Exception {
+        BudgetTestSupport.resetProcessState();
+        context = ApplicationProvider.getApplicationContext();
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        controller.destroy();
+        BudgetTestSupport.drainScheduler();
+    }
+
+    @Test
+    public void fullDayStaysWithinBudgets() throws Exception {
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        startDay(null, QUARTER, CYCLES);
+
+        for (int cycle = 1; cycle <= CYCLES; cycle++) {
+            assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+            fireExpiry();
+            assertFalse(ShadowPowerManager.getLatestWakeLock().isHeld());
+            // Nothing is armed while the alert waits for its result
+            assertTrue(alarmsFor(context, CycleExpiryReceiver.class).isEmpty());
+
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(4));
+            tap(null, cycle % 4 == 0 ? "ACTION_LOSS" : "ACTION_WIN");
+        }
+
+        assertTrue(alarmsFor(context, CycleExpiryReceiver.class).isEmpty());
+        assertTrue(shadowOf(controller.get()).isStoppedBySelf());
+        assertEquals(CYCLES, PendingLogQueue.get(context).read(0, CYCLES + 1).size());
+        assertEquals(CYCLES, CycleHistory.get(context).size());
+
+        long posts = metrics.get(TimerMetrics.NOTIFICATION_POSTS);
+        assertTrue("notification posts: " + posts, posts <= 2L * CYCLES);
+        // One state write per cycle start plus a queue and a history append per result
+        long writes = metrics.get(TimerMetrics.STORAGE_WRITES);
+        assertTrue("storage writes: " + writes, writes <= 3L * CYCLES);
+        assertEquals(0, metrics.get(TimerMetrics.TICKS));
+        assertEquals(CYCLES, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertEquals(CYCLES, metrics.get(TimerMetrics.WAKELOCK_ACQUIRES));
+        long heldMs = metrics.get(TimerMetrics.WAKELOCK_HELD_MS);
+        assertTrue("wakelock held ms: " + heldMs, heldMs <= CYCLES * WAKELOCK_BUDGET_MS);
+        assertLegacyPreferencesUnused();
+    }
+
+    @Test
+    public void rapidTapsRecordOneResult() throws Exception {
+        startDay(null, QUARTER, 4);
+        fireExpiry();
+
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        tap(null, "ACTION_WIN");
+        tap(null, "ACTION_LOSS");
+        tap(null, "ACTION_WIN");
+
+        assertEquals(3, metrics.get(TimerMetrics.ACTIONS_PROCESSED));
+        assertEquals(1, PendingLogQueue.get(context).read(0, 10).size());
+        assertEquals(1, CycleOutcomeRing.get(context, TimerStateStore.DEFAULT_TIMER).total());
+        // The queue and history appends and the next cycle's state, one countdown post
+        assertEquals(3, metrics.get(TimerMetrics.STORAGE_WRITES));
+        assertEquals(1, metrics.get(TimerMetrics.NOTIFICATION_POSTS));
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+        assertLegacyPreferencesUnused();
+    }
+
+    @Test
+    public void everyTransitionIsPushedOnce() throws Exception {
+        List<TimerEvents.Event> events = new ArrayList<>();
+        TimerEvents.Listener listener = events::add;
+        TimerEvents.subscribe(context, listener);
+        try {
+            startDay(null, QUARTER, 2);
+            fireExpiry();
+            tap(null, "ACTION_WIN");
+            fireExpiry();
+            tap(null, "ACTION_LOSS");
+        } finally {
+            TimerEvents.unsubscribe(listener);
+        }
+
+        int[] expected = {
+                TimerEvents.CYCLE_STARTED, TimerEvents.CYCLE_COMPLETE, TimerEvents.RESULT,
+                TimerEvents.CYCLE_STARTED, TimerEvents.CYCLE_COMPLETE, TimerEvents.RESULT,
+                TimerEvents.TIMER_STOPPED,
+        };
+        assertEquals(expected.length, events.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], events.get(i).type);
+            assertEquals(TimerStateStore.DEFAULT_TIMER, events.get(i).timer);
+        }
+        assertEquals(2, events.get(3).cycle);
+        assertTrue(events.get(3).endTime > events.get(3).time);
+        assertEquals(PendingLogQueue.OUTCOME_LOSS, events.get(5).outcome);
+        // Nothing is broadcast for the web layer to go and poll
+        for (Intent broadcast : shadowOf(context).getBroadcastIntents()) {
+            assertNotEquals("com.quarterlog.app.UPDATE_LOG", broadcast.getAction());
+        }
+    }
+
+    @Test
+    public void alertScreenTapStartsNextCycleWithoutWebView() throws Exception {
+        startDay(null, QUARTER, 4);
+        fireExpiry();
+
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        // Tapping the alert notification goes through AlertTapActivity, which stamps the tap
+        Notification posted = shadowOf(controller.get()).getLastForegroundNotification();
+        Intent content = shadowOf(posted.contentIntent).getSavedIntent();
+        assertEquals(AlertTapActivity.class.getName(), content.getComponent().getClassName());
+        AlertTapActivity trampoline = Robolectric.buildActivity(AlertTapActivity.class, content).create().get();
+        assertTrue(trampoline.isFinishing());
+        Intent launch = shadowOf(context).getNextStartedActivity();
+        assertEquals(AlertActivity.class.getName(), launch.getComponent().getClassName());
+        assertTrue(launch.hasExtra(AlertActivity.EXTRA_TAPPED_AT));
+
+        AlertActivity alert = Robolectric.buildActivity(AlertActivity.class, launch).setup().get();
+        BudgetTestSupport.drainScheduler();
+        assertEquals(1, TimerLatency.get(TimerLatency.ALERT_LAUNCH, TimerLatency.today()).count());
+        findButton(alert.getWindow().getDecorView(), "MISS").performClick();
+        assertTrue(alert.isFinishing());
+        assertNull(shadowOf(context).getNextStartedActivity());
+        Intent result = shadowOf(context).getNextStartedService();
+        assertNotNull(result);
+        assertEquals("ACTION_LOSS", result.getAction());
+        deliver(result);
+
+        assertEquals(1, PendingLogQueue.get(context).read(0, 10).size());
+        assertEquals(2, TimerStateStore.get(context).currentCycle());
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+        // The same writes and single post as a tap on the notification itself
+        assertEquals(3, metrics.get(TimerMetrics.STORAGE_WRITES));
+        assertEquals(1, metrics.get(TimerMetrics.NOTIFICATION_POSTS));
+        LatencyHistogram tapToNext = TimerLatency.get(TimerLatency.TAP_TO_NEXT_CYCLE, TimerLatency.today());
+        assertNotNull(tapToNext);
+        assertEquals(1, tapToNext.count());
+        assertTrue("tap to next cycle ms: " + tapToNext.max(), tapToNext.max() <= TAP_TO_NEXT_CYCLE_BUDGET_MS);
+    }
+
+    @Test
+    public void dailyStartFromColdProcessPostsWithinBudget() throws Exception {
+        restartAfter(Duration.ofMinutes(1));
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        Intent fire = new Intent(context, DailyStartReceiver.class)
+                .putExtra("duration", QUARTER)
+                .putExtra("totalCycles", CYCLES)
+                .putExtra("cyclesLeft", CYCLES);
+        context.sendBroadcast(fire);
+        shadowOf(Looper.getMainLooper()).idle();
+        // Asked for before the receiver's scheduler work has run
+        Intent started = shadowOf(context).getNextStartedService();
+        assertNotNull(started);
+        settle();
+
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        deliver(started);
+        assertNotNull(shadowOf(controller.get()).getLastForegroundNotification());
+        assertEquals(1, metrics.get(TimerMetrics.NOTIFICATION_POSTS));
+        assertEquals(1, metrics.get(TimerMetrics.BROADCASTS_RECEIVED));
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+        LatencyHistogram dailyStart = TimerLatency.get(TimerLatency.DAILY_START, TimerLatency.today());
+        assertNotNull(dailyStart);
+        assertEquals(1, dailyStart.count());
+        assertTrue("daily start ms: " + dailyStart.max(), dailyStart.max() <= DAILY_START_BUDGET_MS);
+
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        assertNotNull(manager.getNotificationChannel(TimerForegroundService.CHANNEL_ID));
+        assertNotNull(manager.getNotificationChannel(TimerForegroundService.ALERT_CHANNEL_ID));
+        assertLegacyPreferencesUnused();
+    }
+
+    @Test
+    public void severalTimersShareOneAlarm() throws Exception {
+        startDay(null, QUARTER, 4);
+        startDay("focus", 10 * 60 * 1000, 4);
+        startDay("stretch", 40 * 60 * 1000, 2);
+
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, CycleExpiryReceiver.class);
+        assertEquals(1, alarms.size());
+        assertEquals(SystemClock.elapsedRealtime() + 10 * 60 * 1000, alarms.get(0).getTriggerAtMs());
+
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        fireExpiry();
+        assertEquals(1, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertEquals(1, metrics.get(TimerMetrics.WAKELOCK_ACQUIRES));
+
+        // Re-aimed at the default timer, still a single alarm
+        alarms = alarmsFor(context, CycleExpiryReceiver.class);
+        assertEquals(1, alarms.size());
+        fireExpiry();
+        assertEquals(2, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+    }
+
+    @Test
+    public void restartMidDayRearmsAndAlerts() throws Exception {
+        startDay(null, QUARTER, CYCLES);
+        for (int i = 0; i < 2; i++) {
+            fireExpiry();
+            tap(null, "ACTION_WIN");
+        }
+        restartAfter(Duration.ofMinutes(5));
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+
+        assertEquals(1, metrics.get(TimerMetrics.SERVICE_RESTARTS));
+        assertEquals(0, metrics.get(TimerMetrics.STORAGE_WRITES));
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, CycleExpiryReceiver.class);
+        assertEquals(1, alarms.size());
+        assertEquals(SystemClock.elapsedRealtime() + 10 * 60 * 1000, alarms.get(0).getTriggerAtMs());
+
+        fireExpiry();
+        assertEquals(1, metrics.get(TimerMetrics.ALERT_FIRES));
+        tap(null, "ACTION_LOSS");
+        assertEquals(3, PendingLogQueue.get(context).read(0, 10).size());
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+    }
+
+    @Test
+    public void alertMissedWhileDeadFiresOnce() throws Exception {
+        startDay(null, QUARTER, CYCLES);
+        fireExpiry();
+        tap(null, "ACTION_WIN");
+
+        // Killed with cycle 2 running; its deadline passes while nothing is alive
+        restartAfter(Duration.ofMinutes(20));
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        assertEquals(Service.START_STICKY, controller.get().onStartCommand(null, 0, ++startId));
+        assertEquals(1, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertTrue(alarmsFor(context, CycleExpiryReceiver.class).isEmpty());
+
+        // Killed again before the result: the alert is back on screen but does not fire again
+        restartAfter(Duration.ofMinutes(1));
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        assertEquals(1, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertNotNull(shadowOf(controller.get()).getLastForegroundNotification());
+
+        tap(null, "ACTION_WIN");
+        assertEquals(2, PendingLogQueue.get(context).read(0, 10).size());
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+        assertEquals(3, TimerStateStore.get(context).currentCycle());
+    }
+
+    @Test
+    public void resultQueuedButNotJournaledIsNotAskedAgain() throws Exception {
+        startDay(null, QUARTER, CYCLES);
+        fireExpiry();
+        // Killed after the result was queued, before its RESULT record
+        PendingLogQueue.record(context, TimerStateStore.DEFAULT_TIMER, "ACTION_WIN", "", 1);
+        restartAfter(Duration.ofMinutes(1));
+
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        assertEquals(0, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertEquals(2, TimerStateStore.get(context).currentCycle());
+        assertEquals(1, PendingLogQueue.get(context).read(0, 10).size());
+        assertEquals(1, alarmsFor(context, CycleExpiryReceiver.class).size());
+    }
+
+    @Test
+    public void rebootResumesInterruptedDay() throws Exception {
+        startDay(null, QUARTER, CYCLES);
+        fireExpiry();
+        tap(null, "ACTION_LOSS");
+        restartAfter(Duration.ofMinutes(5));
+
+        BudgetTestSupport.MetricsDelta metrics = new BudgetTestSupport.MetricsDelta();
+        context.sendBroadcast(new Intent(Intent.ACTION_BOOT_COMPLETED).setClass(context, BootReceiver.class));
+        settle();
+        Intent started = shadowOf(context).getNextStartedService();
+        assertNotNull(started);
+        assertEquals(TimerForegroundService.ACTION_RESUME, started.getAction());
+
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        deliver(started);
+        assertEquals(1, metrics.get(TimerMetrics.SERVICE_RESTARTS));
+        assertEquals(0, metrics.get(TimerMetrics.STORAGE_WRITES));
+        assertEquals(0, metrics.get(TimerMetrics.ALERT_FIRES));
+        assertNotNull(shadowOf(controller.get()).getLastForegroundNotification());
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, CycleExpiryReceiver.class);
+        assertEquals(1, alarms.size());
+        assertEquals(SystemClock.elapsedRealtime() + 10 * 60 * 1000, alarms.get(0).getTriggerAtMs());
+    }
+
+    @Test
+    public void stoppedDayIsNotResumed() throws Exception {
+        startDay(null, QUARTER, CYCLES);
+        deliver(new Intent(context, TimerForegroundService.class).setAction("STOP"));
+        restartAfter(Duration.ofMinutes(1));
+
+        controller = Robolectric.buildService(TimerForegroundService.class).create();
+        assertEquals(Service.START_NOT_STICKY, controller.get().onStartCommand(null, 0, ++startId));
+        assertTrue(alarmsFor(context, CycleExpiryReceiver.class).isEmpty());
+        assertFalse(TimerJournal.hasLiveTimer(context));
+    }
+
+    @Test
+    public void lateTickDoesNotPostOverTheAlert() {
+        TimerNotifications notifications = new TimerNotifications(context, TimerStateStore.DEFAULT_TIMER, 0, 1);
+        notifications.countdown(System.currentTimeMillis() + QUARTER, 1, CYCLES, 0);
+        assertTrue(notifications.updateCountdown(QUARTER - 60 * 1000));
+
+        notifications.alert(1, CYCLES);
+        assertFalse(notifications.updateCountdown(QUARTER - 2 * 60 * 1000));
+        notifications.countdown(System.currentTimeMillis() + QUARTER, 2, CYCLES, 0);
+        notifications.stopCountdown();
+        assertFalse(notifications.updateCountdown(QUARTER - 3 * 60 * 1000));
+    }
+
+    private static Button findButton(View view, String text) {
+        if (view instanceof Button && text.contentEquals(((Button) view).getText())) return (Button) view;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                Button found = findButton(group.getChildAt(i), text);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    // Process death: the service and every in-memory store go away, the files stay.
+    private void restartAfter(Duration downtime) throws Exception {
+        controller.destroy();
+        BudgetTestSupport.resetProcessState();
+        shadowOf(Looper.getMainLooper()).idleFor(downtime);
+    }
+
+    private void startDay(String timerId, long duration, int cycles) {
+        Intent intent = new Intent(context, TimerForegroundService.class);
+        intent.putExtra("duration", duration);
+        intent.putExtra("totalCycles", cycles);
+        intent.putExtra("cyclesLeft", cycles);
+        if (timerId != null) intent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        deliver(intent);
+    }
+
+    private void tap(String timerId, String action) {
+        Intent intent = new Intent(context, TimerForegroundService.class).setAction(action);
+        if (timerId != null) intent.putExtra(TimerForegroundService.EXTRA_TIMER_ID, timerId);
+        deliver(intent);
+    }
+
+    private void deliver(Intent intent) {
+        controller.withIntent(intent).startCommand(0, ++startId);
+    }
+
+    // Lets the clock run to the armed expiry, fires the alarm and hands the service start the
+    // receiver makes to the service, as the system would.
+    private void fireExpiry() throws Exception {
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = alarmsFor(context, CycleExpiryReceiver.class);
+        assertEquals(1, alarms.size());
+        ShadowAlarmManager.ScheduledAlarm alarm = alarms.get(0);
+        long wait = alarm.getTriggerAtMs() - SystemClock.elapsedRealtime();
+        if (wait > 0) shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(wait));
+
+        alarm.getOperation().send();
+        settle();
+        Intent started = shadowOf(context).getNextStartedService();
+        assertNotNull(started);
+        assertEquals(TimerForegroundService.ACTION_EXPIRE, started.getAction());
+        deliver(started);
+    }
+
+    // Timer state, schedules and results all moved to files; nothing may write preferences.
+    private void assertLegacyPreferencesUnused() {
+        for (String name : new String[] {"TimerState", "DailySchedule", "NativeLog"}) {
+            assertTrue(name, context.getSharedPreferences(name, Context.MODE_PRIVATE).getAll().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.quarterlog.app;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// The trace ring keeps the newest CAPACITY events, and concurrent writers never leave a torn
+// event in a dump.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TimerTraceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpKeepsNewestEventsInOrder() throws Exception {
+        for (int cycle = 1; cycle <= TimerTrace.CAPACITY + 10; cycle++) {
+            TimerTrace.begin(TimerTrace.CREATE_NOTIFICATION, cycle);
+            TimerTrace.end(TimerTrace.CREATE_NOTIFICATION);
+        }
+        TimerTrace.beginCall(TimerTrace.PLUGIN_CALL, "getMetrics");
+        TimerTrace.endCall(TimerTrace.PLUGIN_CALL, "getMetrics");
+
+        File file = folder.newFile();
+        assertEquals(TimerTrace.CAPACITY, TimerTrace.dump(file));
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            Trace trace = Trace.read(in);
+            assertEquals(TimerTrace.CAPACITY, trace.kinds.length);
+            int last = trace.kinds.length - 1;
+            assertEquals(TimerTrace.END, trace.kinds[last]);
+            assertEquals(TimerTrace.PLUGIN_CALL, trace.events[last]);
+            assertEquals("getMetrics", trace.names[trace.args[last]]);
+            assertEquals(TimerTrace.CAPACITY + 10, trace.args[last - 3]);
+            for (int i = 1; i < trace.times.length; i++) {
+                assertTrue(trace.times[i] >= trace.times[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentWritersNeverTearEvents() throws Exception {
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    TimerTrace.begin(TimerTrace.TRIGGER_ALERT, 7);
+                    TimerTrace.end(TimerTrace.TRIGGER_ALERT);
+                }
+            });
+            writers[t].start();
+        }
+        File file = folder.newFile();
+        for (int dump = 0; dump < 20; dump++) {
+            TimerTrace.dump(file);
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                Trace trace = Trace.read(in);
+                for (int i = 0; i < trace.kinds.length; i++) {
+                    if (trace.events[i] != TimerTrace.TRIGGER_ALERT) continue;
+                    boolean begin = trace.kinds[i] == TimerTrace.BEGIN;
+                    assertTrue(begin || trace.kinds[i] == TimerTrace.END);
+                    assertEquals(begin ? 7 : 0, trace.args[i]);
+                }
+            }
+        }
+        for (Thread writer : writers) writer.join();
+    }
+
+    // Parsed dump; see TimerTrace.dump for the layout.
+    private static final class Trace {
+        String[] names;
+        long[] times;
+        int[] kinds;
+        int[] events;
+        int[] args;
+
+        static Trace read(DataInputStream in) throws Exception {
+            assertEquals(0x514c5452, in.readInt());
+            assertEquals(1, in.readInt());
+            in.readLong();
+            in.readLong();
+            assertEquals(TimerTrace.NAMES.length, in.readInt());
+            for (String name : TimerTrace.NAMES) assertEquals(name, in.readUTF());
+            Trace trace = new Trace();
+            trace.names = new String[in.readInt()];
+            for (int i = 0; i < trace.names.length; i++) trace.names[i] = in.readUTF();
+            int count = in.readInt();
+            trace.times = new long[count];
+            trace.kinds = new int[count];
+            trace.events = new int[count];
+            trace.args = new int[count];
+            for (int i = 0; i < count; i++) {
+                trace.times[i] = in.readLong();
+                trace.kinds[i] = in.readByte();
+                trace.events[i] = in.readByte();
+                trace.args[i] = in.readInt();
+            }
+            return trace;
+        }
+    }
+}
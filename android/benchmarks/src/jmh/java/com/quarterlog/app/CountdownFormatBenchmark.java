@@ -0,0 +1,36 @@
+package com.quarterlog.app;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Countdown text as produced for the ongoing notification on every tick.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CountdownFormatBenchmark {
+    private final CountdownText text = new CountdownText();
+    private long millisLeft = 15 * 60 * 1000;
+
+    private long nextMillis() {
+        millisLeft -= 1000;
+        if (millisLeft < 0) millisLeft = 15 * 60 * 1000;
+        return millisLeft;
+    }
+
+    // The original createNotification() formatting
+    @Benchmark
+    public String stringFormat() {
+        long seconds = Math.max(0, nextMillis() / 1000);
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    @Benchmark
+    public Object countdownText() {
+        return text.set(nextMillis()) ? text.toString() : null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.quarterlog.app;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Re-aiming the expiry alarm with every timer slot live: the earliest timer fires and is
+// re-armed a cycle later, as the service does on each expiry.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeadlineHeapBenchmark {
+    private static final int SLOTS = 8;
+
+    private final DeadlineHeap heap = new DeadlineHeap(SLOTS);
+
+    @Setup
+    public void setUp() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            heap.set(slot, (slot + 1) * 60_000L);
+        }
+    }
+
+    @Benchmark
+    public long expireAndRearm() {
+        int slot = heap.peek();
+        heap.remove(slot);
+        heap.set(slot, heap.peekDeadline() + (slot + 1) * 60_000L);
+        return heap.peekDeadline();
+    }
+}
@@ -0,0 +1,33 @@
+package com.quarterlog.app;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Recording a latency sample and reading a percentile, on a direct buffer like the mapped
+// TimerLatency file.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+    private final LatencyHistogram histogram =
+            new LatencyHistogram(ByteBuffer.allocateDirect(LatencyHistogram.BYTES), 0);
+    private long value;
+
+    @Benchmark
+    public void record() {
+        value = (value * 31 + 7) & 0xffff;
+        histogram.record(value);
+    }
+
+    @Benchmark
+    public long p99() {
+        histogram.record(++value & 0xfff);
+        return histogram.percentile(99);
+    }
+}
@@ -0,0 +1,53 @@
+package com.quarterlog.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Next scheduled auto-start, as computed by ScheduleAlarm whenever a schedule changes or fires.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NextFireTimeBenchmark {
+    @Param({"1", "64"})
+    public int schedules;
+
+    private File file;
+    private ScheduleEngine engine;
+    private long now = 1_700_000_000_000L;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("schedules", ".bin");
+        engine = new ScheduleEngine(file);
+        List<ScheduleEngine.Schedule> list = new ArrayList<>();
+        for (int i = 0; i < schedules; i++) {
+            int days = i == 0 ? ScheduleEngine.ALL_DAYS : 1 << (i % 7);
+            list.add(new ScheduleEngine.Schedule("s" + i, days, (i * 37) % (24 * 60), -1, 15 * 60 * 1000, 32));
+        }
+        engine.setAll(list);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long nextFireTime() {
+        now += 37 * 60 * 1000;
+        return engine.fireTime(engine.nextEvent(now), now);
+    }
+}
@@ -0,0 +1,64 @@
+package com.quarterlog.app;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// One expiry plus one result, the two transitions every cycle of the day goes through, with
+// effects that do nothing: what the state machine itself costs per cycle.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimerEngineBenchmark {
+    private long now = 1_700_000_000_000L;
+    private long elapsed = 5_000_000L;
+
+    private final TimerEngine.Clock clock = new TimerEngine.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return elapsed;
+        }
+    };
+
+    private final TimerEngine engine = new TimerEngine(clock, new TimerEngine.Effects() {
+        @Override
+        public void showCountdown(long endTime, int cycle, int totalCycles) {}
+
+        @Override
+        public void showAlert(int cycle, int totalCycles) {}
+
+        @Override
+        public void recordResult(int cycle, byte outcome, String text) {}
+
+        @Override
+        public void persist(long duration, int totalCycles, int cyclesLeft, long endTime) {}
+
+        @Override
+        public void armExpiry(long triggerAtElapsed) {}
+
+        @Override
+        public void cancelExpiry() {}
+
+        @Override
+        public void finish() {}
+    });
+
+    @Benchmark
+    public int cycle() {
+        if (engine.phase() == TimerEngine.IDLE) engine.start(15 * 60 * 1000, 32, 32);
+        now += 15 * 60 * 1000;
+        elapsed += 15 * 60 * 1000;
+        engine.onExpired();
+        engine.onResult((byte) 1, "");
+        return engine.cyclesLeft();
+    }
+}
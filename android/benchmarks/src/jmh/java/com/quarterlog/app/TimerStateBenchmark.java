@@ -0,0 +1,57 @@
+package com.quarterlog.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Persisting and restoring the TimerState record. With fsync=true writes include the sync and
+// rename, so the numbers depend on the host's disk; fsync=false measures the record itself.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimerStateBenchmark {
+    @Param({"true", "false"})
+    public boolean fsync;
+
+    private File dir;
+    private TimerStateStore store;
+    private int cyclesLeft = 32;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("timer-state").toFile();
+        store = new TimerStateStore(new File(dir, "timer_state.bin"), fsync);
+        store.update(15 * 60 * 1000, 32, 32, 1_700_000_000_000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void update() {
+        if (--cyclesLeft < 0) cyclesLeft = 32;
+        store.update(15 * 60 * 1000, 32, cyclesLeft, 1_700_000_000_000L + cyclesLeft);
+    }
+
+    @Benchmark
+    public boolean load() {
+        return store.load();
+    }
+}